@@ -0,0 +1,90 @@
+package org.plugin.bantools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试用的合成数据
+ * 玩家名、UUID、IP都由序号确定，可以在不查表的情况下构造命中与未命中的输入
+ */
+final class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    /**
+     * 在目录中生成config.conf和代号为1的二进制快照
+     * ConfigManager加载时会按storage设置把数据整理成对应的存储格式（例如关闭二进制快照时写回config.conf）
+     * @param storage config.conf中storage段的内容
+     * @return config.conf文件
+     */
+    static File writeFixture(Path directory, int banCount, int fakeBanCount, String storage) throws IOException {
+        List<BanEntry> bans = new ArrayList<>(banCount);
+        for (int i = 0; i < banCount; i++) {
+            bans.add(ban(i));
+        }
+        List<FakeBanEntry> fakeBans = new ArrayList<>(fakeBanCount);
+        for (int i = 0; i < fakeBanCount; i++) {
+            fakeBans.add(fakeBan(i));
+        }
+
+        String settings = "storage {\n" + storage + "}\n" +
+                "journal_generation = 1\n" +
+                "bans = {}\n" +
+                "fakebans = {}\n";
+        File configFile = directory.resolve("config.conf").toFile();
+        Files.write(configFile.toPath(), settings.getBytes(StandardCharsets.UTF_8));
+        new BanSnapshotFile(directory).write(1, bans, fakeBans);
+        return configFile;
+    }
+
+    static BanEntry ban(int i) {
+        BanEntry entry = new BanEntry();
+        entry.setName(nameOf(i));
+        // UUID和IP都已知，避免命中时触发回填写入
+        entry.setUuid(uuidOf(i));
+        entry.setIp(ipOf(i));
+        entry.setReason("benchmark");
+        entry.setStartTime(System.currentTimeMillis());
+        entry.setEndTime(null);
+        entry.setState(true);
+        return entry;
+    }
+
+    static FakeBanEntry fakeBan(int i) {
+        FakeBanEntry entry = new FakeBanEntry(fakeNameOf(i), "benchmark", TimeUnit.DAYS.toMillis(1));
+        entry.setUuid(uuidOf(Integer.MAX_VALUE - i));
+        entry.setIp("10.255." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+        return entry;
+    }
+
+    static String nameOf(int i) {
+        return "player" + i;
+    }
+
+    static String fakeNameOf(int i) {
+        return "afk" + i;
+    }
+
+    static String uuidOf(int i) {
+        return new UUID(0x5EED_0000_0000_0000L | i, i).toString();
+    }
+
+    static String ipOf(int i) {
+        return "10." + ((i >> 16) & 0xFF) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF);
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
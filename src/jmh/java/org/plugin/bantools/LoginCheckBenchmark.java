@@ -0,0 +1,140 @@
+package org.plugin.bantools;
+
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.plugin.bantools.BenchmarkData.*;
+
+/**
+ * 登录检查路径基准测试
+ * 在临时目录中生成指定规模的封禁数据（以二进制快照形式写入，避免逐条追加变更日志），
+ * 不需要Velocity代理：ProxyServer传入null，登录检查路径不会用到它
+ *
+ * 运行：mvn -P jmh test-compile exec:exec（已默认启用 -prof gc）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class LoginCheckBenchmark {
+    private static final int PROBES = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Path directory;
+    private ConfigManager configManager;
+    private ExpiryScheduler expiryScheduler;
+    private BanManager banManager;
+    private FakeBanManager fakeBanManager;
+
+    // 预先生成的登录输入，命中与未命中各一组
+    private final String[] hitNames = new String[PROBES];
+    private final String[] hitUuids = new String[PROBES];
+    private final String[] hitIps = new String[PROBES];
+    private final String[] missNames = new String[PROBES];
+    private final String[] missUuids = new String[PROBES];
+    private final String[] missIps = new String[PROBES];
+    private final String[] fakeHitNames = new String[PROBES];
+
+    /**
+     * 每个线程各自轮换输入，避免总是查同一个键
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next = (next + 1) & (PROBES - 1);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bantools-jmh");
+        Logger logger = NOPLogger.NOP_LOGGER;
+
+        int fakeBanCount = Math.max(10, size / 100);
+        File configFile = writeFixture(directory, size, fakeBanCount,
+                "  write_behind = true\n  journal = true\n  binary_snapshot = true\n");
+
+        configManager = new ConfigManager(configFile);
+        WhitelistManager whitelistManager = new WhitelistManager(configManager, logger);
+        expiryScheduler = new ExpiryScheduler(logger);
+        banManager = new BanManager(null, logger, configManager, whitelistManager, expiryScheduler);
+        fakeBanManager = new FakeBanManager(configManager, whitelistManager, null, logger, expiryScheduler);
+        banManager.setFakeBanManager(fakeBanManager);
+
+        for (int i = 0; i < PROBES; i++) {
+            int hit = (int) ((i * 2654435761L) % size);
+            hitNames[i] = nameOf(hit);
+            hitUuids[i] = uuidOf(hit);
+            hitIps[i] = ipOf(hit);
+            int miss = size + i;
+            missNames[i] = nameOf(miss);
+            missUuids[i] = uuidOf(miss);
+            missIps[i] = ipOf(miss);
+            fakeHitNames[i] = fakeNameOf(i % fakeBanCount);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fakeBanManager.shutdown();
+        expiryScheduler.shutdown();
+        banManager.shutdown();
+        configManager.shutdown();
+        deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean isBannedHit(Cursor cursor) {
+        int i = cursor.next();
+        return banManager.isBanned(hitUuids[i], hitIps[i], hitNames[i]);
+    }
+
+    @Benchmark
+    public boolean isBannedMiss(Cursor cursor) {
+        int i = cursor.next();
+        return banManager.isBanned(missUuids[i], missIps[i], missNames[i]);
+    }
+
+    @Benchmark
+    public LoginVerdict evaluateLoginHit(Cursor cursor) {
+        int i = cursor.next();
+        return banManager.evaluateLogin(hitUuids[i], hitIps[i], hitNames[i]);
+    }
+
+    @Benchmark
+    public LoginVerdict evaluateLoginMiss(Cursor cursor) {
+        int i = cursor.next();
+        return banManager.evaluateLogin(missUuids[i], missIps[i], missNames[i]);
+    }
+
+    @Benchmark
+    public String getBanMessageHit(Cursor cursor) {
+        int i = cursor.next();
+        return banManager.getBanMessage(hitUuids[i], hitIps[i], hitNames[i]);
+    }
+
+    @Benchmark
+    public boolean isFakeBannedHit(Cursor cursor) {
+        int i = cursor.next();
+        return fakeBanManager.isFakeBanned(null, null, fakeHitNames[i]);
+    }
+
+    @Benchmark
+    public boolean isFakeBannedMiss(Cursor cursor) {
+        int i = cursor.next();
+        return fakeBanManager.isFakeBanned(missUuids[i], missIps[i], missNames[i]);
+    }
+}
@@ -0,0 +1,125 @@
+package org.plugin.bantools;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.plugin.bantools.BenchmarkData.*;
+
+/**
+ * ConfigManager持久化基准测试
+ * 在临时目录中按不同规模和存储方式测量：完整快照、重新加载、单条记录修改、临时封禁到期清理
+ * 所有存储方式都关闭写回，每次操作同步落盘，结果可以直接横向比较：
+ * hocon   - 每次修改重写整个config.conf（原有方式）
+ * journal - 修改追加到变更日志，超过阈值后合并为config.conf
+ * binary  - 变更日志 + 二进制快照
+ *
+ * 运行：mvn -P jmh test-compile exec:exec -Djmh.includes=PersistenceBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"hocon", "journal", "binary"})
+    public String storage;
+
+    private Path directory;
+    private ConfigManager configManager;
+    private int fakeBanCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bantools-jmh");
+        fakeBanCount = Math.max(10, size / 10);
+        File configFile = writeFixture(directory, size, fakeBanCount, storageSettings(storage));
+        configManager = new ConfigManager(configFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        configManager.shutdown();
+        deleteRecursively(directory);
+    }
+
+    private static String storageSettings(String storage) {
+        String common = "  write_behind = false\n";
+        switch (storage) {
+            case "hocon":
+                return common + "  journal = false\n  binary_snapshot = false\n";
+            case "journal":
+                return common + "  journal = true\n  binary_snapshot = false\n";
+            case "binary":
+                return common + "  journal = true\n  binary_snapshot = true\n";
+            default:
+                throw new IllegalArgumentException("未知的存储方式: " + storage);
+        }
+    }
+
+    /**
+     * 每次修改不同的玩家，并交替封禁状态，保证每次都确实产生修改
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+        private boolean state;
+
+        int next(int size) {
+            next = (next + 1) % size;
+            if (next == 0) {
+                state = !state;
+            }
+            return next;
+        }
+
+        boolean state() {
+            return state;
+        }
+    }
+
+    /**
+     * 每次清理前放入一条已过期但仍有效的临时封禁（写入时间不计入测量）
+     */
+    @State(Scope.Thread)
+    public static class ExpiredFakeBan {
+        private int next;
+
+        @Setup(Level.Invocation)
+        public void expireOne(PersistenceBenchmark benchmark) {
+            FakeBanEntry entry = fakeBan(next++ % benchmark.fakeBanCount);
+            entry.setStartTime(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+            entry.setEndTime(System.currentTimeMillis() - 1);
+            benchmark.configManager.addFakeBan(entry);
+        }
+    }
+
+    @Benchmark
+    public void snapshot() {
+        configManager.writeSnapshot();
+    }
+
+    @Benchmark
+    public void reload() {
+        configManager.loadConfig();
+    }
+
+    @Benchmark
+    public void updateBanState(Cursor cursor) {
+        int i = cursor.next(size);
+        configManager.setBanState(nameOf(i), cursor.state());
+    }
+
+    @Benchmark
+    public void cleanupExpiredFakeBans(ExpiredFakeBan expired) {
+        configManager.cleanupExpiredFakeBans();
+    }
+}
@@ -35,7 +35,24 @@ public class BanEntry {
     public boolean getState() { return state; }
     public void setState(boolean state) { this.state = state; }
 
+    /**
+     * 复制一份记录（延迟解码的记录会在此解码）
+     * 已发布到封禁快照的记录不再原地修改，修改时替换为改过的副本，登录线程看到的总是完整构造后发布的对象
+     */
+    public BanEntry copy() {
+        BanEntry copy = new BanEntry();
+        copy.setName(getName());
+        copy.setUuid(getUuid());
+        copy.setIp(getIp());
+        copy.setReason(getReason());
+        copy.setStartTime(getStartTime());
+        copy.setEndTime(getEndTime());
+        copy.setState(getState());
+        return copy;
+    }
+
     public boolean isPermanent() { return endTime == null; }
+    public boolean isExpired() { return !isPermanent() && endTime < System.currentTimeMillis(); }
     public String getEndTimeFormatted() {
         if (isPermanent()) return "永久封禁";
         return DateTimeFormatter.ofPattern("yyyy/MM/dd")
@@ -0,0 +1,332 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 导出封禁数据
+ * 直接遍历ConfigManager的只读视图，逐条写入带缓冲的文件，不复制也不在内存中累积记录；
+ * 先写入临时文件，完成后再改名为目标文件，导出中途失败不会留下不完整的文件
+ * 输出的字段与config.conf中的封禁记录相同，另加type列区分普通封禁和临时封禁，可以直接用 /bt import 导回
+ */
+public class BanExporter {
+    private static final int PROGRESS_INTERVAL = 100000;
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+    private static final String[] COLUMNS = {"type", "name", "uuid", "ip", "reason", "start_time", "end_time", "state"};
+
+    /**
+     * 支持的导出格式
+     */
+    public enum Format {
+        JSONL("jsonl"),
+        CSV("csv");
+
+        private final String id;
+
+        Format(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public static Format fromId(String id) {
+            for (Format format : values()) {
+                if (format.id.equalsIgnoreCase(id)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 导出条件，格式为 key=value：
+     * type=ban|fakeban|all、state=active|inactive|all、from=yyyy/MM/dd、to=yyyy/MM/dd（按开始时间，含当天）
+     */
+    static final class Filter {
+        boolean bans = true;
+        boolean fakeBans = true;
+        Boolean state;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+
+        /**
+         * @return 条件格式错误时返回错误信息，否则返回null
+         */
+        String parse(String option) {
+            int separator = option.indexOf('=');
+            if (separator <= 0) {
+                return "无效的导出条件: " + option;
+            }
+            String key = option.substring(0, separator).toLowerCase(Locale.ROOT);
+            String value = option.substring(separator + 1).toLowerCase(Locale.ROOT);
+            switch (key) {
+                case "type":
+                    if (!value.equals("ban") && !value.equals("fakeban") && !value.equals("all")) {
+                        return "type只能是ban、fakeban或all";
+                    }
+                    bans = !value.equals("fakeban");
+                    fakeBans = !value.equals("ban");
+                    return null;
+                case "state":
+                    if (!value.equals("active") && !value.equals("inactive") && !value.equals("all")) {
+                        return "state只能是active、inactive或all";
+                    }
+                    state = value.equals("all") ? null : value.equals("active");
+                    return null;
+                case "from":
+                case "to":
+                    LocalDate date;
+                    try {
+                        date = LocalDate.parse(value, DATE);
+                    } catch (DateTimeParseException e) {
+                        return "日期格式应为yyyy/MM/dd: " + value;
+                    }
+                    ZoneId zone = ZoneId.systemDefault();
+                    if (key.equals("from")) {
+                        from = date.atStartOfDay(zone).toInstant().toEpochMilli();
+                    } else {
+                        to = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+                    }
+                    return null;
+                default:
+                    return "未知的导出条件: " + key;
+            }
+        }
+
+        boolean matches(boolean active, long startTime) {
+            return (state == null || state == active) && startTime >= from && startTime <= to;
+        }
+    }
+
+    private final ConfigManager configManager;
+    private final Logger logger;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "BanTools-Export");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BanExporter(ConfigManager configManager, Logger logger) {
+        this.configManager = configManager;
+        this.logger = logger;
+    }
+
+    /**
+     * 在后台开始导出
+     * @param formatId 格式名（jsonl或csv）
+     * @param fileName 目标文件，必须位于插件目录内，相对路径以插件目录为准；文件已存在时拒绝覆盖
+     * @param options 导出条件（见Filter）
+     * @param progress 进度与结果消息的接收方
+     * @return 无法开始时返回错误信息，成功开始返回null
+     */
+    public String startExport(String formatId, String fileName, List<String> options, Consumer<String> progress) {
+        Format format = Format.fromId(formatId);
+        if (format == null) {
+            return "未知的导出格式: " + formatId + "（可用: jsonl, csv）";
+        }
+        Filter filter = new Filter();
+        for (String option : options) {
+            String error = filter.parse(option);
+            if (error != null) {
+                return error;
+            }
+        }
+        Path file = configManager.resolveDataFile(fileName);
+        if (file == null) {
+            return "导出文件必须位于插件目录内: " + fileName;
+        }
+        if (Files.exists(file)) {
+            return "文件已存在: " + file;
+        }
+        if (file.getParent() != null && !Files.isDirectory(file.getParent())) {
+            return "目录不存在: " + file.getParent();
+        }
+        if (!running.compareAndSet(false, true)) {
+            return "已有导出任务正在进行";
+        }
+        executor.execute(() -> {
+            try {
+                long count = exportFile(format, file, filter, progress);
+                logger.info("已导出 " + count + " 条封禁记录到 " + file);
+                progress.accept("导出完成: " + count + " 条记录已写入 " + file);
+            } catch (Exception e) {
+                logger.error("导出封禁记录失败: " + file, e);
+                progress.accept("导出失败: " + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+        return null;
+    }
+
+    /**
+     * 同步导出（在调用线程上执行）
+     * @return 写入的记录数
+     */
+    long exportFile(Format format, Path file, Filter filter, Consumer<String> progress) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long count = 0;
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            if (format == Format.CSV) {
+                writer.write(String.join(",", COLUMNS));
+                writer.write('\n');
+            }
+            if (filter.bans) {
+                for (BanEntry entry : configManager.getBans().values()) {
+                    if (!filter.matches(entry.getState() && !entry.isExpired(), entry.getStartTime())) {
+                        continue;
+                    }
+                    writeRecord(writer, format, "ban", entry.getName(), entry.getUuid(), entry.getIp(),
+                            entry.getReason(), entry.getStartTime(), entry.getEndTime(), entry.getState());
+                    if (++count % PROGRESS_INTERVAL == 0) {
+                        progress.accept("已导出 " + count + " 条记录");
+                    }
+                }
+            }
+            if (filter.fakeBans) {
+                for (FakeBanEntry entry : configManager.getFakeBans().values()) {
+                    if (!filter.matches(entry.getState() && !entry.isExpired(), entry.getStartTime())) {
+                        continue;
+                    }
+                    writeRecord(writer, format, "fakeban", entry.getName(), entry.getUuid(), entry.getIp(),
+                            entry.getReason(), entry.getStartTime(), entry.getEndTime(), entry.getState());
+                    if (++count % PROGRESS_INTERVAL == 0) {
+                        progress.accept("已导出 " + count + " 条记录");
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeRecord(Writer writer, Format format, String type, String name, String uuid, String ip,
+                                    String reason, long startTime, Long endTime, boolean state) throws IOException {
+        String end = endTime == null ? null : Long.toString(endTime);
+        if (format == Format.JSONL) {
+            writer.write("{\"type\":");
+            writeJsonString(writer, type);
+            writer.write(",\"name\":");
+            writeJsonString(writer, name);
+            writer.write(",\"uuid\":");
+            writeJsonString(writer, uuid);
+            writer.write(",\"ip\":");
+            writeJsonString(writer, ip);
+            writer.write(",\"reason\":");
+            writeJsonString(writer, reason);
+            writer.write(",\"start_time\":");
+            writer.write(Long.toString(startTime));
+            writer.write(",\"end_time\":");
+            writer.write(end == null ? "null" : end);
+            writer.write(",\"state\":");
+            writer.write(Boolean.toString(state));
+            writer.write("}\n");
+        } else {
+            writeCsvField(writer, type);
+            writer.write(',');
+            writeCsvField(writer, name);
+            writer.write(',');
+            writeCsvField(writer, uuid);
+            writer.write(',');
+            writeCsvField(writer, ip);
+            writer.write(',');
+            writeCsvField(writer, reason);
+            writer.write(',');
+            writer.write(Long.toString(startTime));
+            writer.write(',');
+            writeCsvField(writer, end);
+            writer.write(',');
+            writer.write(Boolean.toString(state));
+            writer.write('\n');
+        }
+    }
+
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * 含逗号、引号或换行的字段加引号，null写为空字段
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote && !value.isEmpty() && value.charAt(0) != ' ' && value.charAt(value.length() - 1) != ' ') {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
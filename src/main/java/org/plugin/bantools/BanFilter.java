@@ -0,0 +1,154 @@
+package org.plugin.bantools;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 封禁键（玩家名、UUID、IP）的布隆过滤器
+ * 绝大多数登录的玩家没有被封禁，先探测几个位即可确定"一定未被封禁"，不必查询封禁表；
+ * 过滤器只增不减：解封后残留的位只会造成误判（回退到正常查表），不会漏判，
+ * 残留过多或超出容量时由持有者按当前数据重建
+ * 键按字符忽略大小写，玩家名无需先转换为小写
+ */
+final class BanFilter {
+    private static final long MAX_WORDS = 1L << 26;
+    // 每条记录最多放入的键数（玩家名、UUID、IP）
+    private static final int KEYS_PER_ENTRY = 3;
+    // 容量相对当前键数的余量，重建后还能继续增长而不必立即再次重建
+    private static final int GROWTH = 2;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private final double targetFpp;
+    private final AtomicInteger insertions = new AtomicInteger();
+    private final AtomicInteger removals = new AtomicInteger();
+
+    /**
+     * @param expectedEntries 预计的键数量，超出后误判率上升
+     * @param fpp 目标误判率
+     */
+    BanFilter(int expectedEntries, double fpp) {
+        capacity = Math.max(1, expectedEntries);
+        targetFpp = fpp;
+        // m = -n·ln(p) / (ln2)²，k = m/n·ln2
+        long m = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // 位置由32位哈希值映射得到，位数组最多2^32位（512MB）
+        int words = (int) Math.min(MAX_WORDS, Math.max(1, (m + 63) >>> 6));
+        bits = new AtomicLongArray(words);
+        bitCount = (long) words << 6;
+        hashCount = Math.max(1, Math.min(16, (int) Math.round((double) bitCount / capacity * Math.log(2))));
+    }
+
+    /**
+     * 按配置创建过滤器，未启用时返回null
+     * 首次加载和之后的每次重建都经过这里，容量统一为 max(expected_entries, 记录数 × 每条的键数 × 余量)
+     * @param entryCount 当前需要放入的记录数
+     */
+    static BanFilter create(ConfigManager configManager, int entryCount) {
+        if (!configManager.isFilterEnabled()) {
+            return null;
+        }
+        long keyCount = (long) entryCount * KEYS_PER_ENTRY;
+        int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(configManager.getFilterExpectedEntries(), keyCount * GROWTH));
+        return new BanFilter(capacity, configManager.getFilterFalsePositiveRate());
+    }
+
+    /**
+     * 加入一个键，null或空字符串忽略
+     */
+    void add(String key) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(h1 + i * h2);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+        insertions.incrementAndGet();
+    }
+
+    /**
+     * 返回false时该键一定不在过滤器中；返回true时可能存在，需要再查表确认
+     */
+    boolean mightContain(String key) {
+        if (key == null || key.isEmpty()) {
+            return false;
+        }
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(h1 + i * h2);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次移除（位不会被清除，只用于判断是否需要重建）
+     */
+    void recordRemoval() {
+        removals.incrementAndGet();
+    }
+
+    /**
+     * 键数量超出容量，或残留的已移除键超过容量的一半时需要重建
+     */
+    boolean needsRebuild() {
+        return insertions.get() > capacity || removals.get() > capacity / 2;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    double getTargetFpp() {
+        return targetFpp;
+    }
+
+    int getInsertions() {
+        return insertions.get();
+    }
+
+    long getMemoryBytes() {
+        return bitCount >>> 3;
+    }
+
+    /**
+     * 按当前插入次数估算的误判率：(1 - e^(-kn/m))^k
+     */
+    double getExpectedFpp() {
+        return Math.pow(1 - Math.exp(-hashCount * (double) insertions.get() / bitCount), hashCount);
+    }
+
+    private long index(int combined) {
+        // 两个哈希值线性组合得到第i个位置（Kirsch-Mitzenmacher）
+        return ((combined & 0xFFFFFFFFL) * bitCount) >>> 32;
+    }
+
+    private static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ Character.toLowerCase(key.charAt(i))) * 0x100000001B3L;
+        }
+        // murmur3的64位收尾混合，让高低32位都充分混合
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,405 @@
+package org.plugin.bantools;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 封禁历史（包括已解封、已过期的记录）的二级索引，供 /bt history 分页查询
+ * - 按开始时间排序（新的在前）的有序集合，时间范围查询直接取子集
+ * - 按（小写玩家名, 开始时间从新到旧）排序的有序映射，玩家名前缀查询直接按顺序遍历子映射
+ * - 原因索引分两层：相同原因的记录放在同一个按时间排序的集合中（每条记录只占一个节点），
+ *   原因中的词再指向包含它的原因；按关键词查询时合并命中原因的集合，结果仍按时间有序
+ * 查询只遍历候选记录直到凑满一页，不复制也不扫描整个历史
+ * 修改由ConfigManager在其对象锁内串行执行，查询可以与修改并发进行（弱一致）
+ */
+final class BanHistory {
+    static final int PAGE_SIZE = 10;
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+    // 开始时间从新到旧，相同时间按记录名排序
+    private static final Comparator<BanEntry> NEWEST_FIRST =
+            Comparator.comparingLong(BanEntry::getStartTime).reversed().thenComparing(BanEntry::getName);
+
+    private final ConcurrentSkipListSet<BanEntry> byStartTime = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+    // 小写玩家名 + '\0' + 反转的开始时间 + '\0' + 记录名 -> 记录（仅大小写不同的记录名各占一项）
+    private final ConcurrentSkipListMap<String, BanEntry> byName = new ConcurrentSkipListMap<>();
+    // 原因 -> 该原因的记录（按时间排序）
+    private final Map<String, ConcurrentSkipListSet<BanEntry>> byReason = new ConcurrentHashMap<>();
+    // 原因中的词 -> 包含该词的原因；有序映射，关键词可以按词首匹配
+    private final ConcurrentSkipListMap<String, Set<String>> reasonsByToken = new ConcurrentSkipListMap<>();
+
+    /**
+     * 一次性建立索引（首次查询时使用）
+     */
+    static BanHistory of(Collection<BanEntry> entries) {
+        BanHistory history = new BanHistory();
+        entries.forEach(history::add);
+        return history;
+    }
+
+    /**
+     * 记录被替换（同名的新记录）或新增时更新索引
+     * @param previous 被替换的记录，没有时为null
+     */
+    void replace(BanEntry previous, BanEntry entry) {
+        if (previous != null && previous != entry) {
+            remove(previous);
+        }
+        add(entry);
+    }
+
+    int size() {
+        return byStartTime.size();
+    }
+
+    private void add(BanEntry entry) {
+        byStartTime.add(entry);
+        byName.put(nameKey(entry), entry);
+        String reason = reasonOf(entry);
+        byReason.computeIfAbsent(reason, key -> {
+            for (String token : tokenize(key)) {
+                reasonsByToken.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(key);
+            }
+            return new ConcurrentSkipListSet<>(NEWEST_FIRST);
+        }).add(entry);
+    }
+
+    /**
+     * 记录被删除时移出索引
+     */
+    void remove(BanEntry entry) {
+        byStartTime.remove(entry);
+        byName.remove(nameKey(entry), entry);
+        String reason = reasonOf(entry);
+        Set<BanEntry> sameReason = byReason.get(reason);
+        if (sameReason == null) {
+            return;
+        }
+        sameReason.remove(entry);
+        if (sameReason.isEmpty()) {
+            byReason.remove(reason);
+            for (String token : tokenize(reason)) {
+                reasonsByToken.computeIfPresent(token, (t, reasons) -> {
+                    reasons.remove(reason);
+                    return reasons.isEmpty() ? null : reasons;
+                });
+            }
+        }
+    }
+
+    /**
+     * 查询一页结果（按开始时间从新到旧；按玩家名前缀查询时按玩家名排序，同名的记录从新到旧）
+     * 指定了玩家名前缀时从名称索引取候选，否则指定了关键词时从原因索引取候选，都没有时按时间范围取候选
+     * @param page 页码，从1开始
+     */
+    Page search(Query query, int page) {
+        if (query.from > query.to) {
+            return new Page(Collections.emptyList(), page, false);
+        }
+        Iterator<BanEntry> candidates;
+        if (query.namePrefix != null) {
+            candidates = byName.subMap(query.namePrefix, query.namePrefix + Character.MAX_VALUE).values().iterator();
+        } else if (query.keywordTokens != null) {
+            List<Iterator<BanEntry>> sources = new ArrayList<>();
+            for (String reason : matchReasons(query.keywordTokens)) {
+                ConcurrentSkipListSet<BanEntry> entries = byReason.get(reason);
+                if (entries != null) {
+                    sources.add(timeRange(entries, query).iterator());
+                }
+            }
+            candidates = new MergingIterator(sources);
+        } else {
+            candidates = timeRange(byStartTime, query).iterator();
+        }
+
+        int skip = (page - 1) * PAGE_SIZE;
+        List<BanEntry> results = new ArrayList<>(PAGE_SIZE);
+        boolean hasMore = false;
+        while (candidates.hasNext()) {
+            BanEntry entry = candidates.next();
+            if (!query.matches(entry)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+            } else if (results.size() < PAGE_SIZE) {
+                results.add(entry);
+            } else {
+                hasMore = true;
+                break;
+            }
+        }
+        return new Page(results, page, hasMore);
+    }
+
+    /**
+     * 关键词中的每个词都要出现在原因中（英文等按词首匹配，中文按相邻的两个字匹配）
+     */
+    private Set<String> matchReasons(List<String> keywordTokens) {
+        Set<String> matched = null;
+        for (String token : keywordTokens) {
+            Set<String> reasons = new HashSet<>();
+            reasonsByToken.subMap(token, token + Character.MAX_VALUE).values().forEach(reasons::addAll);
+            if (matched == null) {
+                matched = reasons;
+            } else {
+                matched.retainAll(reasons);
+            }
+            if (matched.isEmpty()) {
+                break;
+            }
+        }
+        return matched == null ? Collections.emptySet() : matched;
+    }
+
+    private static NavigableSet<BanEntry> timeRange(ConcurrentSkipListSet<BanEntry> entries, Query query) {
+        if (query.from == Long.MIN_VALUE && query.to == Long.MAX_VALUE) {
+            return entries;
+        }
+        // 集合从新到旧排列，子集从to开始、到from结束；探针的记录名取最小/最大值以包含边界上的所有记录
+        return entries.subSet(probe(query.to, ""), true, probe(query.from, String.valueOf(Character.MAX_VALUE)), true);
+    }
+
+    private static BanEntry probe(long startTime, String name) {
+        BanEntry probe = new BanEntry();
+        probe.setStartTime(startTime);
+        probe.setName(name);
+        return probe;
+    }
+
+    private static String nameKey(BanEntry entry) {
+        // 开始时间与Long.MAX_VALUE异或后按无符号十六进制定长输出，字符串升序即开始时间降序
+        String time = Long.toHexString(entry.getStartTime() ^ Long.MAX_VALUE);
+        return entry.getName().toLowerCase(Locale.ROOT) + '\0' + "0000000000000000".substring(time.length()) + time +
+                '\0' + entry.getName();
+    }
+
+    private static String reasonOf(BanEntry entry) {
+        return entry.getReason() == null ? "" : entry.getReason();
+    }
+
+    /**
+     * 把文本切分为小写的词：字母数字按连续片段成词，汉字等表意文字取相邻两个字（片段末尾的单字也单独成词，
+     * 保证每个字都是某个词的开头，单字关键词也能按词首查到）
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int i = 0;
+        while (i < lower.length()) {
+            int c = lower.codePointAt(i);
+            if (Character.isIdeographic(c)) {
+                int start = i;
+                while (i < lower.length() && Character.isIdeographic(lower.codePointAt(i))) {
+                    i += Character.charCount(lower.codePointAt(i));
+                }
+                int[] chars = lower.substring(start, i).codePoints().toArray();
+                for (int j = 0; j < chars.length; j++) {
+                    tokens.add(new String(chars, j, Math.min(2, chars.length - j)));
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < lower.length() && Character.isLetterOrDigit(lower.codePointAt(i)) &&
+                        !Character.isIdeographic(lower.codePointAt(i))) {
+                    i += Character.charCount(lower.codePointAt(i));
+                }
+                tokens.add(lower.substring(start, i));
+            } else {
+                i += Character.charCount(c);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 查询条件，格式为 key=value：
+     * name=玩家名前缀、reason=关键词、state=active|inactive|all、permanent=true|false、
+     * from/to=yyyy/MM/dd（按开始时间，含当天）、end_from/end_to=yyyy/MM/dd（按结束时间，含当天，永久封禁不匹配）
+     */
+    static final class Query {
+        String namePrefix;
+        List<String> keywordTokens;
+        Boolean state;
+        Boolean permanent;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        long endFrom = Long.MIN_VALUE;
+        long endTo = Long.MAX_VALUE;
+
+        /**
+         * @return 条件格式错误时返回错误信息，否则返回null
+         */
+        String parse(String option) {
+            int separator = option.indexOf('=');
+            if (separator <= 0 || separator == option.length() - 1) {
+                return "无效的查询条件: " + option;
+            }
+            String key = option.substring(0, separator).toLowerCase(Locale.ROOT);
+            String value = option.substring(separator + 1);
+            String lower = value.toLowerCase(Locale.ROOT);
+            switch (key) {
+                case "name":
+                    namePrefix = lower;
+                    return null;
+                case "reason":
+                    List<String> tokens = tokenize(value);
+                    if (tokens.isEmpty()) {
+                        return "关键词中没有可查询的文字: " + value;
+                    }
+                    keywordTokens = tokens;
+                    return null;
+                case "state":
+                    if (!lower.equals("active") && !lower.equals("inactive") && !lower.equals("all")) {
+                        return "state只能是active、inactive或all";
+                    }
+                    state = lower.equals("all") ? null : lower.equals("active");
+                    return null;
+                case "permanent":
+                    if (!lower.equals("true") && !lower.equals("false")) {
+                        return "permanent只能是true或false";
+                    }
+                    permanent = lower.equals("true");
+                    return null;
+                case "from":
+                case "to":
+                case "end_from":
+                case "end_to":
+                    LocalDate date;
+                    try {
+                        date = LocalDate.parse(lower, DATE);
+                    } catch (DateTimeParseException e) {
+                        return "日期格式应为yyyy/MM/dd: " + value;
+                    }
+                    ZoneId zone = ZoneId.systemDefault();
+                    long start = date.atStartOfDay(zone).toInstant().toEpochMilli();
+                    long end = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+                    if (key.equals("from")) {
+                        from = start;
+                    } else if (key.equals("to")) {
+                        to = end;
+                    } else if (key.equals("end_from")) {
+                        endFrom = start;
+                    } else {
+                        endTo = end;
+                    }
+                    return null;
+                default:
+                    return "未知的查询条件: " + key;
+            }
+        }
+
+        boolean matches(BanEntry entry) {
+            if (state != null && state != (entry.getState() && !entry.isExpired())) {
+                return false;
+            }
+            if (permanent != null && permanent != entry.isPermanent()) {
+                return false;
+            }
+            if (entry.getStartTime() < from || entry.getStartTime() > to) {
+                return false;
+            }
+            if (endFrom != Long.MIN_VALUE || endTo != Long.MAX_VALUE) {
+                Long endTime = entry.getEndTime();
+                if (endTime == null || endTime < endFrom || endTime > endTo) {
+                    return false;
+                }
+            }
+            // 从其他索引取候选时，名称前缀和关键词在这里核对
+            if (namePrefix != null && !entry.getName().toLowerCase(Locale.ROOT).startsWith(namePrefix)) {
+                return false;
+            }
+            return keywordTokens == null || containsTokens(reasonOf(entry), keywordTokens);
+        }
+
+        private static boolean containsTokens(String reason, List<String> keywordTokens) {
+            List<String> reasonTokens = tokenize(reason);
+            for (String token : keywordTokens) {
+                boolean found = false;
+                for (String candidate : reasonTokens) {
+                    if (candidate.startsWith(token)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 一页查询结果
+     */
+    static final class Page {
+        private final List<BanEntry> entries;
+        private final int page;
+        private final boolean hasMore;
+
+        Page(List<BanEntry> entries, int page, boolean hasMore) {
+            this.entries = entries;
+            this.page = page;
+            this.hasMore = hasMore;
+        }
+
+        List<BanEntry> getEntries() {
+            return entries;
+        }
+
+        int getPage() {
+            return page;
+        }
+
+        boolean hasMore() {
+            return hasMore;
+        }
+    }
+
+    /**
+     * 合并多个按时间排序的迭代器，输出仍按时间排序
+     */
+    private static final class MergingIterator implements Iterator<BanEntry> {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> NEWEST_FIRST.compare(a.entry, b.entry));
+
+        MergingIterator(List<Iterator<BanEntry>> sources) {
+            for (Iterator<BanEntry> source : sources) {
+                if (source.hasNext()) {
+                    heads.add(new Head(source.next(), source));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public BanEntry next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            if (head.source.hasNext()) {
+                heads.add(new Head(head.source.next(), head.source));
+            }
+            return head.entry;
+        }
+
+        private static final class Head {
+            final BanEntry entry;
+            final Iterator<BanEntry> source;
+
+            Head(BanEntry entry, Iterator<BanEntry> source) {
+                this.entry = entry;
+                this.source = source;
+            }
+        }
+    }
+}
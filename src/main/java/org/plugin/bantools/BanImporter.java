@@ -0,0 +1,500 @@
+package org.plugin.bantools;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 批量导入封禁记录
+ * 源文件逐条流式解析（不构建完整的JSON树），每条记录校验并与现有记录和文件内已读记录去重，
+ * 全部读完后一次性写入ConfigManager（一次持久化批次），并一次性重建内存快照
+ * 导入在单独的线程上执行，进度通过回调发送给命令执行者
+ */
+public class BanImporter {
+    private static final int PROGRESS_INTERVAL = 10000;
+    private static final DateTimeFormatter VANILLA_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+
+    /**
+     * 支持的导入格式
+     */
+    public enum Format {
+        /** 原版 banned-players.json */
+        VANILLA("vanilla"),
+        /** 原版 banned-ips.json */
+        VANILLA_IP("vanilla-ip"),
+        /** 每行一个JSON对象，字段与config.conf中的封禁记录相同 */
+        JSONL("jsonl"),
+        /** 带表头的CSV，列名与config.conf中的封禁记录字段相同 */
+        CSV("csv");
+
+        private final String id;
+
+        Format(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public static Format fromId(String id) {
+            for (Format format : values()) {
+                if (format.id.equalsIgnoreCase(id)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 一次导入的统计
+     */
+    public static final class Result {
+        private int read;
+        private int imported;
+        private int duplicates;
+        private int invalid;
+        private int expired;
+        private int protectedPlayers;
+        private int skipped;
+
+        public int getRead() { return read; }
+
+        public int getImported() { return imported; }
+
+        public int getDuplicates() { return duplicates; }
+
+        public int getInvalid() { return invalid; }
+
+        public int getExpired() { return expired; }
+
+        public int getProtectedPlayers() { return protectedPlayers; }
+
+        public int getSkipped() { return skipped; }
+
+        @Override
+        public String toString() {
+            return "读取 " + read + " 条，导入 " + imported + " 条，重复 " + duplicates + " 条，无效 " + invalid +
+                    " 条，已过期 " + expired + " 条，白名单保护 " + protectedPlayers + " 条，临时封禁 " + skipped + " 条";
+        }
+    }
+
+    private final BanManager banManager;
+    private final ConfigManager configManager;
+    private final WhitelistManager whitelistManager;
+    private final Logger logger;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "BanTools-Import");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BanImporter(BanManager banManager, ConfigManager configManager,
+                       WhitelistManager whitelistManager, Logger logger) {
+        this.banManager = banManager;
+        this.configManager = configManager;
+        this.whitelistManager = whitelistManager;
+        this.logger = logger;
+    }
+
+    /**
+     * 在后台开始导入
+     * @param formatId 格式名（见Format）
+     * @param fileName 源文件路径，必须位于插件目录内，相对路径以插件目录为准
+     * @param progress 进度与结果消息的接收方
+     * @return 无法开始时返回错误信息，成功开始返回null
+     */
+    public String startImport(String formatId, String fileName, Consumer<String> progress) {
+        Format format = Format.fromId(formatId);
+        if (format == null) {
+            return "未知的导入格式: " + formatId + "（可用: " + formatIds() + "）";
+        }
+        Path file = configManager.resolveDataFile(fileName);
+        if (file == null) {
+            return "导入文件必须位于插件目录内: " + fileName;
+        }
+        if (!Files.isRegularFile(file)) {
+            return "文件不存在: " + file;
+        }
+        if (!running.compareAndSet(false, true)) {
+            return "已有导入任务正在进行";
+        }
+        executor.execute(() -> {
+            try {
+                Result result = importFile(format, file, progress);
+                logger.info("从 " + file + " 导入封禁记录完成: " + result);
+                progress.accept("导入完成: " + result);
+            } catch (Exception e) {
+                logger.error("导入封禁记录失败: " + file, e);
+                progress.accept("导入失败: " + e.getMessage() + "，未写入任何记录");
+            } finally {
+                running.set(false);
+            }
+        });
+        return null;
+    }
+
+    /**
+     * 同步导入（在调用线程上执行）
+     * 任何一条记录解析出错都会中止整个导入，此时不写入任何记录
+     */
+    Result importFile(Format format, Path file, Consumer<String> progress) throws IOException {
+        Batch batch = new Batch(progress);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            switch (format) {
+                case VANILLA:
+                case VANILLA_IP:
+                    readVanilla(reader, format == Format.VANILLA_IP, batch);
+                    break;
+                case JSONL:
+                    readJsonLines(reader, batch);
+                    break;
+                case CSV:
+                    readCsv(reader, batch);
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的导入格式: " + format);
+            }
+        }
+        batch.commit();
+        return batch.result;
+    }
+
+    public static String formatIds() {
+        StringJoiner ids = new StringJoiner(", ");
+        for (Format format : Format.values()) {
+            ids.add(format.getId());
+        }
+        return ids.toString();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 原版封禁列表：一个JSON数组，玩家封禁含uuid/name，IP封禁含ip，另有created/expires/reason
+     */
+    private void readVanilla(Reader source, boolean ipList, Batch batch) throws IOException {
+        JsonReader reader = new JsonReader(source);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Map<String, String> fields = readObject(reader);
+            BanEntry entry = new BanEntry();
+            if (ipList) {
+                entry.setName(fields.get("ip"));
+                entry.setIp(fields.get("ip"));
+            } else {
+                entry.setName(fields.get("name"));
+                entry.setUuid(fields.get("uuid"));
+            }
+            entry.setReason(fields.get("reason"));
+            entry.setStartTime(parseVanillaDate(fields.get("created"), System.currentTimeMillis()));
+            String expires = fields.get("expires");
+            entry.setEndTime(expires == null || expires.equalsIgnoreCase("forever") ?
+                    null : parseVanillaDate(expires, null));
+            entry.setState(true);
+            batch.offer(entry, expires != null && !expires.equalsIgnoreCase("forever") && entry.getEndTime() == null);
+        }
+        reader.endArray();
+    }
+
+    /**
+     * JSON Lines：每行一个对象，空行忽略
+     */
+    private void readJsonLines(BufferedReader source, Batch batch) throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = source.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Map<String, String> fields;
+            try {
+                fields = readObject(new JsonReader(new StringReader(line)));
+            } catch (IOException | IllegalStateException e) {
+                throw new IOException("第 " + lineNumber + " 行不是有效的JSON对象: " + e.getMessage(), e);
+            }
+            offerFields(fields, batch);
+        }
+    }
+
+    /**
+     * CSV：第一行为表头，按列名取字段，支持带引号的字段
+     */
+    private void readCsv(BufferedReader source, Batch batch) throws IOException {
+        List<String> header = readCsvRecord(source);
+        if (header == null) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(header.size());
+        for (String column : header) {
+            columns.add(column.trim().toLowerCase(Locale.ROOT));
+        }
+        if (!columns.contains("name") && !columns.contains("ip")) {
+            throw new IOException("CSV表头中缺少name或ip列");
+        }
+        List<String> record;
+        while ((record = readCsvRecord(source)) != null) {
+            if (record.size() == 1 && record.get(0).trim().isEmpty()) {
+                continue;
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < columns.size() && i < record.size(); i++) {
+                String value = record.get(i).trim();
+                fields.put(columns.get(i), value.isEmpty() ? null : value);
+            }
+            offerFields(fields, batch);
+        }
+    }
+
+    /**
+     * 按config.conf的字段名构造记录（jsonl与csv共用）
+     */
+    private void offerFields(Map<String, String> fields, Batch batch) {
+        if ("fakeban".equalsIgnoreCase(fields.get("type"))) {
+            // /bt export 导出的临时封禁记录不导入为普通封禁
+            batch.skip();
+            return;
+        }
+        BanEntry entry = new BanEntry();
+        String name = fields.get("name");
+        entry.setName(name != null ? name : fields.get("ip"));
+        entry.setUuid(fields.get("uuid"));
+        entry.setIp(fields.get("ip"));
+        entry.setReason(fields.get("reason"));
+        boolean malformed = false;
+        try {
+            String start = fields.get("start_time");
+            entry.setStartTime(start == null ? System.currentTimeMillis() : Long.parseLong(start));
+            String end = fields.get("end_time");
+            entry.setEndTime(end == null || end.equalsIgnoreCase("null") ? null : Long.parseLong(end));
+        } catch (NumberFormatException e) {
+            malformed = true;
+        }
+        String state = fields.get("state");
+        entry.setState(state == null || Boolean.parseBoolean(state));
+        batch.offer(entry, malformed);
+    }
+
+    /**
+     * 读取一个JSON对象的所有标量字段（值统一转为字符串，null保持为null，嵌套值忽略）
+     */
+    private static Map<String, String> readObject(JsonReader reader) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName().toLowerCase(Locale.ROOT);
+            JsonToken token = reader.peek();
+            switch (token) {
+                case STRING:
+                case NUMBER:
+                    fields.put(name, reader.nextString());
+                    break;
+                case BOOLEAN:
+                    fields.put(name, Boolean.toString(reader.nextBoolean()));
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return fields;
+    }
+
+    private static Long parseVanillaDate(String text, Long fallback) {
+        if (text == null) {
+            return fallback;
+        }
+        try {
+            return ZonedDateTime.parse(text.trim(), VANILLA_DATE).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * 读取一条CSV记录，字段可以用双引号包围（其中的""表示一个引号，可以包含逗号和换行）
+     * @return 字段列表，已到文件末尾时返回null
+     */
+    static List<String> readCsvRecord(BufferedReader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("CSV引号未闭合");
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                break;
+            } else if (c == '\r') {
+                reader.mark(1);
+                if (reader.read() != '\n') {
+                    reader.reset();
+                }
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * 一次导入中累积的记录
+     */
+    private final class Batch {
+        private final Consumer<String> progress;
+        private final Result result = new Result();
+        // 文件内已读取的记录名（小写），用于文件内去重
+        private final Set<String> seen = new HashSet<>();
+        private final List<BanEntry> accepted = new ArrayList<>();
+        private final long now = System.currentTimeMillis();
+
+        Batch(Consumer<String> progress) {
+            this.progress = progress;
+        }
+
+        void skip() {
+            result.read++;
+            result.skipped++;
+        }
+
+        void offer(BanEntry entry, boolean malformed) {
+            result.read++;
+            if (!malformed && normalize(entry)) {
+                accept(entry);
+            } else {
+                result.invalid++;
+            }
+            if (result.read % PROGRESS_INTERVAL == 0) {
+                progress.accept("已读取 " + result.read + " 条记录，待导入 " + accepted.size() + " 条");
+            }
+        }
+
+        private void accept(BanEntry entry) {
+            if (entry.getEndTime() != null && entry.getEndTime() <= now) {
+                result.expired++;
+                return;
+            }
+            if (entry.getIp() == null || !entry.getIp().equals(entry.getName())) {
+                if (whitelistManager.isWhitelisted(entry.getName())) {
+                    result.protectedPlayers++;
+                    return;
+                }
+            }
+            String key = entry.getName().toLowerCase(Locale.ROOT);
+            if (!seen.add(key)) {
+                result.duplicates++;
+                return;
+            }
+            // 已有同名记录时保持不变：已解封或已过期的旧记录也是封禁历史的一部分，整条替换会丢失它
+            if (configManager.findBan(entry.getName()) != null) {
+                result.duplicates++;
+                return;
+            }
+            accepted.add(entry);
+        }
+
+        /**
+         * 校验并规范化：玩家名须符合格式，IP或IP段转换为规范格式，UUID须有效
+         */
+        private boolean normalize(BanEntry entry) {
+            String name = entry.getName() == null ? null : entry.getName().trim();
+            if (name == null || name.isEmpty()) {
+                return false;
+            }
+            IpRangeTrie.Prefix address = IpRangeTrie.Prefix.parse(name);
+            if (address != null) {
+                // 以IP为名的记录是IP封禁
+                name = address.toString();
+                entry.setIp(name);
+                entry.setUuid(null);
+            } else if (name.length() > 16 || !name.matches("^[a-zA-Z0-9_]{1,16}$")) {
+                return false;
+            } else if (entry.getIp() != null) {
+                IpRangeTrie.Prefix ip = IpRangeTrie.Prefix.parse(entry.getIp());
+                if (ip == null || !ip.isSingleAddress()) {
+                    return false;
+                }
+                entry.setIp(ip.toString());
+            }
+            entry.setName(name);
+            if (entry.getUuid() != null) {
+                try {
+                    entry.setUuid(UUID.fromString(entry.getUuid().trim()).toString());
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            }
+            if (entry.getReason() == null || entry.getReason().trim().isEmpty()) {
+                entry.setReason(configManager.getDefaultBanReason());
+            }
+            return true;
+        }
+
+        void commit() {
+            if (accepted.isEmpty()) {
+                return;
+            }
+            progress.accept("读取完成，正在写入 " + accepted.size() + " 条记录...");
+            // 读取期间新增的同名记录（命令或同步）在写锁内被跳过，计为重复
+            result.imported = banManager.importBans(accepted).size();
+            result.duplicates += accepted.size() - result.imported;
+        }
+    }
+}
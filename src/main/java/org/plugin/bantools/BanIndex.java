@@ -0,0 +1,226 @@
+package org.plugin.bantools;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 封禁记录索引（不可变快照）
+ * 按小写玩家名、UUID、IP分别建立哈希索引，登录检查只需几次哈希查找，与封禁总数无关
+ * IP段封禁（ip字段为CIDR）另外放入前缀树，按IP查找时精确匹配未命中再做最长前缀匹配
+ * 每次修改都返回新的索引，旧索引保持不变：登录线程拿到一个快照后读取的所有索引彼此一致，无需加锁
+ * 放入索引的记录不再修改，需要改动时用副本替换（BanEntry.copy），否则各索引的键会与记录内容不一致
+ */
+final class BanIndex {
+    static final BanIndex EMPTY = new BanIndex(OverlayMap.empty(), OverlayMap.empty(),
+            OverlayMap.empty(), OverlayMap.empty(), IpRangeTrie.EMPTY);
+
+    // 记录名 -> 封禁记录（与config.conf中bans下的键一致）
+    private final OverlayMap<BanEntry> entries;
+    private final OverlayMap<List<BanEntry>> byName;
+    private final OverlayMap<List<BanEntry>> byUuid;
+    private final OverlayMap<List<BanEntry>> byIp;
+    private final IpRangeTrie ranges;
+
+    private BanIndex(OverlayMap<BanEntry> entries, OverlayMap<List<BanEntry>> byName,
+                     OverlayMap<List<BanEntry>> byUuid, OverlayMap<List<BanEntry>> byIp, IpRangeTrie ranges) {
+        this.entries = entries;
+        this.byName = byName;
+        this.byUuid = byUuid;
+        this.byIp = byIp;
+        this.ranges = ranges;
+    }
+
+    /**
+     * 一次性构建索引（加载时使用，避免逐条修改的开销）
+     */
+    static BanIndex of(Collection<BanEntry> bans) {
+        Map<String, BanEntry> entries = new HashMap<>();
+        Map<String, List<BanEntry>> byName = new HashMap<>();
+        Map<String, List<BanEntry>> byUuid = new HashMap<>();
+        Map<String, List<BanEntry>> byIp = new HashMap<>();
+        IpRangeTrie ranges = IpRangeTrie.EMPTY;
+        for (BanEntry entry : bans) {
+            BanEntry previous = entries.put(entry.getName(), entry);
+            if (previous != null) {
+                remove(byName, nameKey(previous.getName()), previous);
+                remove(byUuid, previous.getUuid(), previous);
+                IpRangeTrie.Prefix range = rangeOf(previous);
+                if (range != null) {
+                    ranges = ranges.without(range, previous);
+                } else {
+                    remove(byIp, previous.getIp(), previous);
+                }
+            }
+            add(byName, nameKey(entry.getName()), entry);
+            add(byUuid, entry.getUuid(), entry);
+            IpRangeTrie.Prefix range = rangeOf(entry);
+            if (range != null) {
+                ranges = ranges.with(range, entry);
+            } else {
+                add(byIp, entry.getIp(), entry);
+            }
+        }
+        return new BanIndex(OverlayMap.of(entries), freeze(byName), freeze(byUuid), freeze(byIp), ranges);
+    }
+
+    /**
+     * 返回加入封禁记录后的索引，同名记录会被替换
+     */
+    BanIndex plus(BanEntry entry) {
+        BanIndex base = this;
+        BanEntry previous = entries.get(entry.getName());
+        if (previous != null) {
+            base = minus(previous);
+        }
+        IpRangeTrie.Prefix range = rangeOf(entry);
+        return new BanIndex(
+                base.entries.with(entry.getName(), entry),
+                with(base.byName, nameKey(entry.getName()), entry),
+                with(base.byUuid, entry.getUuid(), entry),
+                range == null ? with(base.byIp, entry.getIp(), entry) : base.byIp,
+                range == null ? base.ranges : base.ranges.with(range, entry));
+    }
+
+    /**
+     * 返回移除封禁记录后的索引，按记录当前的名称、UUID、IP定位
+     */
+    BanIndex minus(BanEntry entry) {
+        if (entries.get(entry.getName()) != entry) {
+            return this;
+        }
+        IpRangeTrie.Prefix range = rangeOf(entry);
+        return new BanIndex(
+                entries.without(entry.getName()),
+                without(byName, nameKey(entry.getName()), entry),
+                without(byUuid, entry.getUuid(), entry),
+                range == null ? without(byIp, entry.getIp(), entry) : byIp,
+                range == null ? ranges : ranges.without(range, entry));
+    }
+
+    /**
+     * 按记录名取封禁记录
+     */
+    BanEntry get(String recordName) {
+        return recordName == null ? null : entries.get(recordName);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void forEach(Consumer<BanEntry> action) {
+        entries.forEach((name, entry) -> action.accept(entry));
+    }
+
+    /**
+     * 按玩家名查找生效中的封禁记录（忽略大小写）
+     */
+    BanEntry findByName(String username) {
+        return firstActive(byName, nameKey(username));
+    }
+
+    /**
+     * 按UUID查找生效中的封禁记录
+     */
+    BanEntry findByUuid(String uuid) {
+        return firstActive(byUuid, uuid);
+    }
+
+    /**
+     * 按IP查找生效中的封禁记录，包括覆盖该IP的IP段封禁
+     */
+    BanEntry findByIp(String ip) {
+        BanEntry entry = firstActive(byIp, ip);
+        return entry != null ? entry : ranges.match(ip);
+    }
+
+    /**
+     * 只匹配IP段封禁（IP段无法放入布隆过滤器，过滤器判定未封禁后仍需检查；没有IP段封禁时直接返回null）
+     */
+    BanEntry findByRange(String ip) {
+        return ranges.match(ip);
+    }
+
+    /**
+     * ip字段为CIDR格式时返回对应的IP段，否则返回null
+     */
+    static IpRangeTrie.Prefix rangeOf(BanEntry entry) {
+        String ip = entry.getIp();
+        if (ip == null || ip.indexOf('/') < 0) {
+            return null;
+        }
+        return IpRangeTrie.Prefix.parse(ip);
+    }
+
+    static String nameKey(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    private static void add(Map<String, List<BanEntry>> index, String key, BanEntry entry) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        index.computeIfAbsent(key, k -> new ArrayList<>(1)).add(entry);
+    }
+
+    private static void remove(Map<String, List<BanEntry>> index, String key, BanEntry entry) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        index.computeIfPresent(key, (k, list) -> {
+            list.remove(entry);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private static OverlayMap<List<BanEntry>> freeze(Map<String, List<BanEntry>> index) {
+        index.replaceAll((key, list) -> Collections.unmodifiableList(list));
+        return OverlayMap.of(index);
+    }
+
+    private static OverlayMap<List<BanEntry>> with(OverlayMap<List<BanEntry>> index, String key, BanEntry entry) {
+        if (key == null || key.isEmpty()) {
+            return index;
+        }
+        List<BanEntry> current = index.get(key);
+        if (current == null) {
+            return index.with(key, Collections.singletonList(entry));
+        }
+        List<BanEntry> updated = new ArrayList<>(current.size() + 1);
+        updated.addAll(current);
+        updated.add(entry);
+        return index.with(key, Collections.unmodifiableList(updated));
+    }
+
+    private static OverlayMap<List<BanEntry>> without(OverlayMap<List<BanEntry>> index, String key, BanEntry entry) {
+        if (key == null || key.isEmpty()) {
+            return index;
+        }
+        List<BanEntry> current = index.get(key);
+        if (current == null || !current.contains(entry)) {
+            return index;
+        }
+        if (current.size() == 1) {
+            return index.without(key);
+        }
+        List<BanEntry> updated = new ArrayList<>(current);
+        updated.remove(entry);
+        return index.with(key, Collections.unmodifiableList(updated));
+    }
+
+    private static BanEntry firstActive(OverlayMap<List<BanEntry>> index, String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        List<BanEntry> entries = index.get(key);
+        if (entries == null) {
+            return null;
+        }
+        for (BanEntry entry : entries) {
+            if (entry.getState() && !entry.isExpired()) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
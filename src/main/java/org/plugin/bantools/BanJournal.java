@@ -0,0 +1,220 @@
+package org.plugin.bantools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 封禁数据变更日志
+ * 每次修改只追加一行完整记录，启动时在配置文件快照之上重放；
+ * 快照带有代号（generation），日志首行记录对应的代号，代号不一致的日志视为已合并过的旧日志
+ */
+class BanJournal {
+    static final String BAN = "BAN";
+    static final String FAKEBAN = "FAKEBAN";
+
+    private static final String HEADER_PREFIX = "#BanTools-journal ";
+    private static final String NULL_MARK = "\\N";
+
+    private final Path path;
+    private FileChannel channel;
+
+    BanJournal(Path path) {
+        this.path = path;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * 日志当前大小（字节），不存在时为0
+     */
+    long size() {
+        try {
+            return Files.exists(path) ? Files.size(path) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 在快照之上重放日志
+     * @param generation 快照的代号，只有代号一致的日志才会被重放
+     * @return 重放的记录数
+     */
+    int replay(long generation, Map<String, BanEntry> bans, Map<String, FakeBanEntry> fakeBans) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        String[] lines = content.split("\n", -1);
+        if (lines.length == 0 || !lines[0].equals(HEADER_PREFIX + generation)) {
+            System.out.println("变更日志与配置文件快照不匹配，已忽略: " + (lines.length == 0 ? "" : lines[0]));
+            return 0;
+        }
+
+        int applied = 0;
+        // 最后一段没有换行符，说明写入时被中断，直接丢弃
+        for (int i = 1; i < lines.length - 1; i++) {
+            String line = lines[i];
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                String[] fields = line.split("\t", -1);
+                if (BAN.equals(fields[0]) && fields.length == 8) {
+                    BanEntry entry = decodeBan(fields);
+                    bans.put(entry.getName(), entry);
+                    applied++;
+                } else if (FAKEBAN.equals(fields[0]) && fields.length == 8) {
+                    FakeBanEntry entry = decodeFakeBan(fields);
+                    fakeBans.put(entry.getName(), entry);
+                    applied++;
+                } else {
+                    System.err.println("无法识别的变更日志记录（第 " + (i + 1) + " 行），已跳过");
+                }
+            } catch (Exception e) {
+                System.err.println("解析变更日志第 " + (i + 1) + " 行失败: " + e.getMessage());
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * 追加一批记录并刷到磁盘
+     */
+    synchronized void append(List<String> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        StringBuilder batch = new StringBuilder(records.size() * 96);
+        for (String record : records) {
+            batch.append(record).append('\n');
+        }
+        FileChannel out = channel();
+        ByteBuffer buffer = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        out.force(false);
+    }
+
+    /**
+     * 快照写入完成后清空日志，并记录新快照的代号
+     */
+    synchronized void reset(long generation) throws IOException {
+        close();
+        Files.write(path, (HEADER_PREFIX + generation + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    static String encode(BanEntry entry) {
+        return String.join("\t", BAN,
+                escape(entry.getName()),
+                escape(entry.getUuid()),
+                escape(entry.getIp()),
+                escape(entry.getReason()),
+                String.valueOf(entry.getStartTime()),
+                entry.getEndTime() == null ? NULL_MARK : String.valueOf(entry.getEndTime()),
+                String.valueOf(entry.getState()));
+    }
+
+    static String encode(FakeBanEntry entry) {
+        return String.join("\t", FAKEBAN,
+                escape(entry.getName()),
+                escape(entry.getUuid()),
+                escape(entry.getIp()),
+                escape(entry.getReason()),
+                String.valueOf(entry.getStartTime()),
+                String.valueOf(entry.getEndTime()),
+                String.valueOf(entry.getState()));
+    }
+
+    static BanEntry decodeBan(String[] fields) {
+        BanEntry entry = new BanEntry();
+        entry.setName(unescape(fields[1]));
+        entry.setUuid(unescape(fields[2]));
+        entry.setIp(unescape(fields[3]));
+        entry.setReason(unescape(fields[4]));
+        entry.setStartTime(Long.parseLong(fields[5]));
+        entry.setEndTime(NULL_MARK.equals(fields[6]) ? null : Long.parseLong(fields[6]));
+        entry.setState(Boolean.parseBoolean(fields[7]));
+        return entry;
+    }
+
+    static FakeBanEntry decodeFakeBan(String[] fields) {
+        FakeBanEntry entry = new FakeBanEntry();
+        entry.setName(unescape(fields[1]));
+        entry.setUuid(unescape(fields[2]));
+        entry.setIp(unescape(fields[3]));
+        entry.setReason(unescape(fields[4]));
+        entry.setStartTime(Long.parseLong(fields[5]));
+        entry.setEndTime(Long.parseLong(fields[6]));
+        entry.setState(Boolean.parseBoolean(fields[7]));
+        return entry;
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return NULL_MARK;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String unescape(String value) {
+        if (NULL_MARK.equals(value)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 't': sb.append('\t'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    default: sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
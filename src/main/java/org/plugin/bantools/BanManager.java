@@ -8,23 +8,50 @@ import org.slf4j.Logger;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class BanManager {
     private final ProxyServer server;
     private final Logger logger;
     private final ConfigManager configManager;
     private final WhitelistManager whitelistManager;
+    private final ExpiryScheduler expiryScheduler;
+    private final BanToolsMetrics metrics;
     private FakeBanManager fakeBanManager; // 延迟初始化，避免循环依赖
-    private final Map<String, BanEntry> banEntries = new HashMap<>();
+    // 生效中的封禁记录以不可变快照发布：登录线程只做一次volatile读取，看到的各个索引彼此一致；
+    // 修改方在writeLock下基于当前快照构建下一个版本再整体替换
+    private final AtomicReference<BanIndex> bans = new AtomicReference<>(BanIndex.EMPTY);
+    private final Object writeLock = new Object();
+    // 快照中所有玩家名、UUID、IP的布隆过滤器，未启用时为null；总是先于快照更新
+    private volatile BanFilter banFilter;
+    // 快照中记录名的补全索引，与快照一同在writeLock下增量更新，重新加载时整体替换
+    private volatile NameCompletionIndex bannedNames = new NameCompletionIndex();
+    // 限时封禁的到期任务，键与快照中的记录名一致
+    private final Map<String, ExpiryScheduler.Timeout> banExpiries = new ConcurrentHashMap<>();
+    // 登录过程中产生的持久化操作（如回填离线封禁的UUID/IP）排队到此线程执行，不阻塞登录
+    private final ExecutorService persistenceExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "BanTools-Persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public BanManager(ProxyServer server, Logger logger, ConfigManager configManager,
-                     WhitelistManager whitelistManager) {
+                     WhitelistManager whitelistManager, ExpiryScheduler expiryScheduler) {
         this.server = server;
         this.logger = logger;
         this.configManager = configManager;
         this.whitelistManager = whitelistManager;
+        this.expiryScheduler = expiryScheduler;
+        this.metrics = configManager.getMetrics();
+        metrics.registerGauge("active_bans", () -> bans.get().size());
+        metrics.registerGauge("ban_filter_bytes", () -> {
+            BanFilter filter = banFilter;
+            return filter == null ? 0 : filter.getMemoryBytes();
+        });
         loadBans();
     }
 
@@ -39,10 +66,13 @@ public class BanManager {
      * 获取所有被封禁的玩家名列表
      */
     public List<String> getBannedPlayers() {
-        return banEntries.values().stream()
-                .filter(entry -> entry.getState() && !isExpired(entry))
-                .map(BanEntry::getName)
-                .collect(Collectors.toList());
+        List<String> names = new ArrayList<>();
+        bans.get().forEach(entry -> {
+            if (entry.getState() && !isExpired(entry)) {
+                names.add(entry.getName());
+            }
+        });
+        return names;
     }
 
 
@@ -54,94 +84,502 @@ public class BanManager {
         return whitelistManager.isWhitelisted(playerName);
     }
 
-    public void loadBans() {
-        banEntries.clear();
-        Map<String, BanEntry> allBans = configManager.getBans();
+    /**
+     * 将一条生效的封禁记录加入内存（增量更新）
+     */
+    private void activateBan(BanEntry entry) {
+        synchronized (writeLock) {
+            BanIndex current = bans.get();
+            BanEntry previous = current.get(entry.getName());
+            publish(current.plus(entry), entry, previous);
+            scheduleExpiry(entry);
+        }
+    }
 
-        allBans.forEach((key, entry) -> {
-            if (entry.getState() && !isExpired(entry)) {
-                banEntries.put(key, entry);
+    /**
+     * 批量加入生效的封禁记录（批量封禁使用），只发布一次快照
+     * 完成后遍历一次在线玩家，踢出命中新封禁的玩家
+     */
+    void activateBans(Collection<BanEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        replaceBans(Collections.emptyList(), entries);
+        kickBannedPlayers(entries);
+    }
+
+    /**
+     * 导入封禁记录：在写锁内再次检查重名，只写入并启用不存在同名记录的记录
+     * 导入读取文件时的检查与这里之间可能有新的封禁（命令或同步），持有写锁后它们要么已写入配置而被跳过，
+     * 要么在导入的快照发布之后才启用，配置与内存快照保持一致
+     * @return 实际导入的记录
+     */
+    List<BanEntry> importBans(Collection<BanEntry> entries) {
+        List<BanEntry> added;
+        List<BanEntry> active = new ArrayList<>();
+        synchronized (writeLock) {
+            added = configManager.addNewBans(entries);
+            for (BanEntry entry : added) {
+                if (entry.getState()) {
+                    active.add(entry);
+                }
             }
-        });
-        logger.info("加载了 " + banEntries.size() + " 个有效封禁记录");
+            if (!active.isEmpty()) {
+                replaceBans(Collections.emptyList(), active);
+            }
+        }
+        if (!active.isEmpty()) {
+            kickBannedPlayers(active);
+        }
+        return added;
     }
 
-    public boolean isBanned(String uuid, String ip, String username) {
-        // 检查普通封禁
-        boolean normalBan = banEntries.values().stream()
-                .filter(entry -> !isExpired(entry))
-                .anyMatch(entry -> {
-                    // 优先检查玩家名（最可靠的标识符）
-                    if (entry.getName().equalsIgnoreCase(username)) {
-                        // 如果是离线封禁（UUID或IP为null），更新信息
-                        if ((entry.getUuid() == null || entry.getIp() == null) &&
-                            uuid != null && !uuid.isEmpty() && ip != null && !ip.isEmpty()) {
-                            updateBanEntryInfo(entry, uuid, ip);
+    /**
+     * 将一条封禁记录移出内存（增量更新）
+     */
+    private void deactivateBan(BanEntry entry) {
+        synchronized (writeLock) {
+            BanIndex current = bans.get();
+            if (current.get(entry.getName()) == entry) {
+                publish(current.minus(entry), null, entry);
+                cancelExpiry(entry.getName());
+            }
+        }
+    }
+
+    /**
+     * 批量将封禁记录移出内存，只发布一次快照
+     */
+    private void deactivateBans(Collection<BanEntry> entries) {
+        replaceBans(entries, Collections.emptyList());
+    }
+
+    /**
+     * 在一次快照发布中移出和加入多条封禁记录，登录检查只会看到修改前或修改后的完整快照
+     * 加入的条数远小于现有封禁数时逐条修改，否则一次性重建快照和过滤器
+     * @param removed 要移出的记录（必须是快照中的同一对象，已被取代的记录忽略）
+     * @param added 要加入的生效记录，同名记录会被替换
+     */
+    private void replaceBans(Collection<BanEntry> removed, Collection<BanEntry> added) {
+        synchronized (writeLock) {
+            BanIndex current = bans.get();
+            BanIndex next = current;
+            BanFilter filter = banFilter;
+            NameCompletionIndex names = bannedNames;
+            for (BanEntry entry : removed) {
+                if (next.get(entry.getName()) != entry) {
+                    continue;
+                }
+                next = next.minus(entry);
+                cancelExpiry(entry.getName());
+                names.remove(entry.getName());
+                if (filter != null) {
+                    filter.recordRemoval();
+                }
+            }
+            // 逐条修改每次约为O(√n)，重建为O(n)
+            if ((long) added.size() * added.size() < current.size()) {
+                for (BanEntry entry : added) {
+                    if (filter != null) {
+                        if (next.get(entry.getName()) != null) {
+                            filter.recordRemoval();
                         }
-                        return true;
+                        addKeys(filter, entry);
                     }
-                    // 只有当UUID和IP不为null且不为空时才进行匹配
-                    return (entry.getUuid() != null && entry.getUuid().equals(uuid)) ||
-                           (entry.getIp() != null && entry.getIp().equals(ip));
-                });
+                    next = next.plus(entry);
+                }
+                if (filter != null && filter.needsRebuild()) {
+                    banFilter = buildFilter(next);
+                }
+            } else {
+                List<BanEntry> all = new ArrayList<>(next.size() + added.size());
+                next.forEach(all::add);
+                all.addAll(added);
+                next = BanIndex.of(all);
+                banFilter = buildFilter(next);
+            }
+            bans.set(next);
+            added.forEach(this::scheduleExpiry);
+            added.forEach(entry -> names.add(entry.getName()));
+        }
+    }
 
-        // 检查临时封禁
-        boolean fakeBan = fakeBanManager != null && fakeBanManager.isFakeBanned(uuid, ip, username);
+    /**
+     * 遍历一次在线玩家，踢出命中本批新加入封禁的玩家
+     * 只在本批记录建立的小索引中查找（已在线的玩家不会命中之前的封禁），白名单中的玩家不踢出
+     */
+    private void kickBannedPlayers(Collection<BanEntry> entries) {
+        BanIndex batch = BanIndex.of(entries);
+        for (Player player : server.getAllPlayers()) {
+            String username = player.getUsername();
+            BanEntry entry = batch.findByName(username);
+            if (entry == null) {
+                entry = batch.findByUuid(player.getUniqueId().toString());
+            }
+            if (entry == null) {
+                entry = batch.findByIp(player.getRemoteAddress().getAddress().getHostAddress());
+            }
+            // 期间被解封或取代的记录不再踢出
+            if (entry == null || bans.get().get(entry.getName()) != entry) {
+                continue;
+            }
+            if (whitelistManager.isWhitelisted(username)) {
+                logger.info("玩家 " + username + " 在白名单中，未因封禁 " + entry.getName() + " 被踢出");
+                continue;
+            }
+            player.disconnect(Component.text(formatBanMessage(entry)));
+            logger.info("已踢出玩家: " + username + "，原因: " + entry.getReason());
+        }
+    }
+
+    /**
+     * 应用config.conf被外部修改后（或从同步日志读到的）变化的记录（ConfigManager已更新其中的表）
+     * 被修改或删除的记录按原对象移出，修改后仍生效的记录加入，全部在一次快照发布中完成
+     * 快照在写锁内读取：读取之后发布的修改不会被这次替换覆盖
+     */
+    void applyReloadedBans(Collection<BanEntry> changed, Collection<String> removedNames) {
+        List<BanEntry> added = new ArrayList<>();
+        synchronized (writeLock) {
+            BanIndex current = bans.get();
+            List<BanEntry> removed = new ArrayList<>();
+            for (BanEntry entry : changed) {
+                BanEntry previous = current.get(entry.getName());
+                if (previous != null) {
+                    removed.add(previous);
+                }
+                if (entry.getState() && !isExpired(entry)) {
+                    added.add(entry);
+                }
+            }
+            for (String name : removedNames) {
+                BanEntry previous = current.get(name);
+                if (previous != null) {
+                    removed.add(previous);
+                }
+            }
+            if (removed.isEmpty() && added.isEmpty()) {
+                return;
+            }
+            replaceBans(removed, added);
+        }
+        if (!added.isEmpty()) {
+            kickBannedPlayers(added);
+        }
+    }
 
-        return normalBan || fakeBan;
+    /**
+     * 应用其他代理同步来的一批封禁记录（同步日志的一次读取）：整条替换本地同名记录，生效中的封禁加入内存，已解除的移出内存
+     * 整批只发布一次快照，并只遍历一次在线玩家踢出命中的会话；比本地记录旧的同步记录会被忽略
+     */
+    void applySyncedBans(List<BanEntry> entries) {
+        // 同一批中的同名记录以最后一条为准
+        Map<String, BanEntry> accepted = new LinkedHashMap<>();
+        for (BanEntry entry : entries) {
+            if (configManager.putSyncedBan(entry)) {
+                accepted.put(entry.getName(), entry);
+            }
+        }
+        BanIndex current = bans.get();
+        for (BanEntry entry : accepted.values()) {
+            if (entry.getState() && !isExpired(entry)) {
+                logger.info("同步封禁: " + entry.getName());
+            } else if (current.get(entry.getName()) != null) {
+                logger.info("同步解封: " + entry.getName());
+            }
+        }
+        applyReloadedBans(accepted.values(), Collections.emptyList());
     }
 
-    private void updateBanEntryInfo(BanEntry entry, String uuid, String ip) {
-        try {
-            entry.setUuid(uuid);
-            entry.setIp(ip);
-            configManager.updateBanEntry(entry);
-            logger.info("更新了玩家 " + entry.getName() + " 的封禁信息");
-        } catch (Exception e) {
-            logger.error("更新封禁信息失败", e);
+    /**
+     * 限时封禁在到期时刻移出内存，配置文件中的记录保持不变
+     */
+    private void scheduleExpiry(BanEntry entry) {
+        cancelExpiry(entry.getName());
+        if (entry.isPermanent()) {
+            return;
         }
+        ExpiryScheduler.Timeout timeout = expiryScheduler.schedule(entry.getEndTime(), () -> {
+            // 期间可能已被新的封禁记录取代，只移除原记录
+            synchronized (writeLock) {
+                BanIndex current = bans.get();
+                if (current.get(entry.getName()) != entry) {
+                    return;
+                }
+                publish(current.minus(entry), null, entry);
+                banExpiries.remove(entry.getName());
+            }
+            logger.info("封禁已到期: " + entry.getName());
+        });
+        banExpiries.put(entry.getName(), timeout);
     }
 
-    public String getBanMessage(String uuid, String ip, String username) {
+    /**
+     * 发布新的快照：先更新布隆过滤器再替换快照，读取方看到新快照时过滤器一定已包含其中的记录
+     * 过滤器只增不减，移除的记录只计数，残留过多或超出容量时按新快照重建
+     * 调用方需持有writeLock
+     */
+    private void publish(BanIndex next, BanEntry added, BanEntry removed) {
+        if (removed != null) {
+            bannedNames.remove(removed.getName());
+        }
+        if (added != null) {
+            bannedNames.add(added.getName());
+        }
+        BanFilter filter = banFilter;
+        if (filter != null) {
+            if (removed != null) {
+                filter.recordRemoval();
+            }
+            if (added != null) {
+                addKeys(filter, added);
+            }
+            if (filter.needsRebuild()) {
+                banFilter = buildFilter(next);
+            }
+        }
+        bans.set(next);
+    }
+
+    private BanFilter buildFilter(BanIndex index) {
+        BanFilter filter = BanFilter.create(configManager, index.size());
+        if (filter != null) {
+            index.forEach(entry -> addKeys(filter, entry));
+        }
+        return filter;
+    }
+
+    private static void addKeys(BanFilter filter, BanEntry entry) {
+        filter.add(entry.getName());
+        filter.add(entry.getUuid());
+        if (BanIndex.rangeOf(entry) == null) {
+            filter.add(entry.getIp());
+        }
+    }
+
+    /**
+     * 生效中封禁记录名的补全索引
+     */
+    NameCompletionIndex getBannedNames() {
+        return bannedNames;
+    }
+
+    /**
+     * 当前的布隆过滤器，未启用时为null
+     */
+    BanFilter getFilter() {
+        return banFilter;
+    }
+
+    private void cancelExpiry(String name) {
+        ExpiryScheduler.Timeout timeout = banExpiries.remove(name);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * 从ConfigManager完整重建内存中的封禁数据，仅在启动时调用（重新加载配置只应用变化的记录，见applyReloadedBans）
+     */
+    public void loadBans() {
+        long start = System.nanoTime();
+        List<BanEntry> active = new ArrayList<>();
+        for (BanEntry entry : configManager.getBans().values()) {
+            if (entry.getState() && !isExpired(entry)) {
+                active.add(entry);
+            }
+        }
+        // 新快照完整构建后再替换，重新加载期间登录检查继续使用旧快照，不会出现空窗
+        BanIndex loaded = BanIndex.of(active);
+        BanFilter filter = buildFilter(loaded);
+        NameCompletionIndex names = new NameCompletionIndex();
+        loaded.forEach(entry -> names.add(entry.getName()));
+        synchronized (writeLock) {
+            banExpiries.values().forEach(ExpiryScheduler.Timeout::cancel);
+            banExpiries.clear();
+            banFilter = filter;
+            bans.set(loaded);
+            bannedNames = names;
+            loaded.forEach(this::scheduleExpiry);
+        }
+        metrics.getBanReload().recordSince(start);
+        logger.info("加载了 " + loaded.size() + " 个有效封禁记录");
+    }
+
+    public boolean isBanned(String uuid, String ip, String username) {
+        return !evaluateLogin(uuid, ip, username).isAllowed();
+    }
+
+    /**
+     * 登录检查：一次查找得出放行或拒绝结果，拒绝时附带命中的记录和拒绝消息
+     */
+    public LoginVerdict evaluateLogin(String uuid, String ip, String username) {
+        return evaluateLogin(uuid, ip, username, true);
+    }
+
+    /**
+     * @param recordMetrics 是否计入布隆过滤器的统计
+     */
+    private LoginVerdict evaluateLogin(String uuid, String ip, String username, boolean recordMetrics) {
         // 检查普通封禁
-        BanEntry entry = findBanEntry(uuid, ip, username);
+        BanEntry entry = findBanEntry(uuid, ip, username, recordMetrics);
         if (entry != null) {
-            String reason = entry.getReason();
-            if (entry.isPermanent()) {
-                return "§c你已被永久封禁！\n原因：" + reason;
-            } else {
-                return String.format("§c你已被封禁至 %s\n原因：%s",
-                        entry.getEndTimeFormatted(),
-                        reason);
-            }
+            return LoginVerdict.banned(entry, rejectTypeOf(entry, uuid, username),
+                    Component.text(formatBanMessage(entry)));
         }
 
         // 检查临时封禁
         if (fakeBanManager != null) {
-            FakeBanEntry fakeBanEntry = fakeBanManager.getFakeBanInfo(uuid, ip, username);
+            FakeBanEntry fakeBanEntry = fakeBanManager.getFakeBanInfo(uuid, ip, username, recordMetrics);
             if (fakeBanEntry != null) {
-                return String.format("§c你已被临时封禁！\n原因：%s\n剩余时间：%s",
-                        fakeBanEntry.getReason(),
-                        fakeBanEntry.getRemainingTimeFormatted());
+                return LoginVerdict.fakeBanned(fakeBanEntry, Component.text(formatFakeBanMessage(fakeBanEntry)));
             }
         }
 
+        return LoginVerdict.allowed();
+    }
+
+    /**
+     * 验证前的预检查：此时还没有UUID，只按IP（含IP段）和玩家名匹配普通封禁与临时封禁
+     * 正版模式下玩家名要通过验证才能使用，按名拒绝与验证后再拒绝的结果相同，只是省去了验证
+     * 放行的连接还会在LoginEvent中再查一次，这里不计入布隆过滤器的统计，否则同一次登录会被统计两次
+     */
+    public LoginVerdict evaluatePreLogin(String ip, String username) {
+        return evaluateLogin(null, ip, username, false);
+    }
+
+    /**
+     * 判断命中的是哪一种封禁（仅在拒绝时调用，用于统计）
+     */
+    private static BanToolsMetrics.RejectType rejectTypeOf(BanEntry entry, String uuid, String username) {
+        if (entry.getName().equalsIgnoreCase(username)) {
+            return BanToolsMetrics.RejectType.NAME;
+        }
+        if (entry.getUuid() != null && entry.getUuid().equals(uuid)) {
+            return BanToolsMetrics.RejectType.UUID;
+        }
+        return BanIndex.rangeOf(entry) != null ? BanToolsMetrics.RejectType.IP_RANGE : BanToolsMetrics.RejectType.IP;
+    }
+
+    private void updateBanEntryInfo(BanEntry entry, String uuid, String ip) {
+        // 快照中的记录不原地修改：用补全了UUID和IP的副本替换，索引键随之更新；内存立即生效，写入配置文件排队异步执行
+        BanEntry updated = entry.copy();
+        updated.setUuid(uuid);
+        updated.setIp(ip);
+        synchronized (writeLock) {
+            BanIndex current = bans.get();
+            if (current.get(entry.getName()) != entry) {
+                // 期间已被解封或替换
+                return;
+            }
+            publish(current.minus(entry).plus(updated), updated, entry);
+            scheduleExpiry(updated);
+        }
+
+        persistenceExecutor.execute(() -> {
+            try {
+                configManager.updateBanEntry(entry, updated);
+                logger.info("更新了玩家 " + entry.getName() + " 的封禁信息");
+            } catch (Exception e) {
+                logger.error("更新封禁信息失败", e);
+            }
+        });
+    }
+
+    public String getBanMessage(String uuid, String ip, String username) {
+        LoginVerdict verdict = evaluateLogin(uuid, ip, username);
+        if (verdict.getBanEntry() != null) {
+            return formatBanMessage(verdict.getBanEntry());
+        }
+        if (verdict.getFakeBanEntry() != null) {
+            return formatFakeBanMessage(verdict.getFakeBanEntry());
+        }
         return "";
     }
 
+    private String formatBanMessage(BanEntry entry) {
+        String reason = entry.getReason();
+        if (entry.isPermanent()) {
+            return "§c你已被永久封禁！\n原因：" + reason;
+        } else {
+            return String.format("§c你已被封禁至 %s\n原因：%s",
+                    entry.getEndTimeFormatted(),
+                    reason);
+        }
+    }
+
+    private String formatFakeBanMessage(FakeBanEntry fakeBanEntry) {
+        return String.format("§c你已被临时封禁！\n原因：%s\n剩余时间：%s",
+                fakeBanEntry.getReason(),
+                fakeBanEntry.getRemainingTimeFormatted());
+    }
+
     public String banPlayer(String target, String reason, String duration) {
+        List<BanEntry> created = new ArrayList<>(1);
+        String error = createBanEntry(target, reason, duration, created);
+        if (error != null) {
+            return error;
+        }
+        BanEntry entry = created.get(0);
+
+        configManager.addBan(entry);
+        // 只把新记录加入内存索引，无需重新加载全部封禁
+        activateBan(entry);
+        IpRangeTrie.Prefix address = IpRangeTrie.Prefix.parse(entry.getName());
+        if (address != null) {
+            kickAddress(address, entry.getReason());
+        } else {
+            kickPlayer(entry.getName(), entry.getReason());
+        }
+        return null; // 成功封禁，返回null表示没有错误
+    }
+
+    /**
+     * 批量封禁：逐个验证目标，全部通过验证的记录一次写入配置、一次发布快照，
+     * 再遍历一次在线玩家踢出命中的会话
+     * @return 每个目标（按输入顺序）对应的结果，null表示成功，否则为失败原因
+     */
+    public Map<String, String> banPlayers(Collection<String> targets, String reason, String duration) {
+        Map<String, String> results = new LinkedHashMap<>();
+        List<BanEntry> created = new ArrayList<>(targets.size());
+        Set<String> names = new HashSet<>();
+        for (String target : targets) {
+            String error = createBanEntry(target, reason, duration, created);
+            if (error == null && !names.add(BanIndex.nameKey(created.get(created.size() - 1).getName()))) {
+                created.remove(created.size() - 1);
+                error = "重复的目标";
+            }
+            results.put(target, error);
+        }
+        if (!created.isEmpty()) {
+            configManager.addBans(created);
+            activateBans(created);
+            logger.info("批量封禁了 " + created.size() + " 个目标");
+        }
+        return results;
+    }
+
+    /**
+     * 验证封禁目标并创建封禁记录（不写入配置，也不加入内存）
+     * @param created 验证通过时新记录追加到此列表
+     * @return 验证失败时返回错误信息，否则返回null
+     */
+    private String createBanEntry(String target, String reason, String duration, List<BanEntry> created) {
         // 输入验证
         if (target == null || target.trim().isEmpty()) {
             logger.warn("尝试封禁空的玩家名");
             return "玩家名不能为空";
         }
-        if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
+        // 目标也可以是IP或IP段（CIDR），统一转换为规范格式作为记录名
+        IpRangeTrie.Prefix address = IpRangeTrie.Prefix.parse(target);
+        if (address != null) {
+            target = address.toString();
+        } else if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
             logger.warn("无效的玩家名格式: " + target);
-            return "无效的玩家名格式";
+            return "无效的玩家名或IP格式";
         }
 
         // 白名单保护检查
-        String protectionCheck = whitelistManager.checkProtection(target);
+        String protectionCheck = address == null ? whitelistManager.checkProtection(target) : null;
         if (protectionCheck != null) {
             logger.warn("尝试封禁受保护的玩家: " + target);
             return protectionCheck;
@@ -155,12 +593,17 @@ public class BanManager {
             return "该玩家已被封禁！" + banInfo;
         }
 
-        Player player = server.getPlayer(target).orElse(null);
+        Player player = address == null ? server.getPlayer(target).orElse(null) : null;
         BanEntry entry = new BanEntry();
 
         entry.setName(target);
         // 改进离线玩家处理 - 如果玩家不在线，只记录玩家名，UUID和IP在玩家登录时验证
-        if (player != null) {
+        if (address != null) {
+            // IP封禁只记录IP；IP段的ip字段为CIDR格式，由前缀树索引
+            entry.setUuid(null);
+            entry.setIp(target);
+            logger.info("封禁IP" + (address.isSingleAddress() ? "" : "段") + ": " + target);
+        } else if (player != null) {
             entry.setUuid(player.getUniqueId().toString());
             entry.setIp(player.getRemoteAddress().getAddress().getHostAddress());
         } else {
@@ -178,12 +621,8 @@ public class BanManager {
         } else {
             entry.setEndTime(parseDuration(duration));
         }
-
-        configManager.addBan(entry);
-        // ConfigManager.addBan() 已经调用了 loadBans()，这里调用 loadBans() 来同步 BanManager 的数据
-        loadBans();
-        kickPlayer(target, entry.getReason());
-        return null; // 成功封禁，返回null表示没有错误
+        created.add(entry);
+        return null;
     }
 
     private long parseDuration(String duration) {
@@ -221,14 +660,62 @@ public class BanManager {
     }
 
     public String unbanPlayer(String target) {
+        List<BanEntry> found = new ArrayList<>(1);
+        String error = findBanToLift(target, found);
+        if (error != null) {
+            return error;
+        }
+        BanEntry existingBan = found.get(0);
+
+        configManager.setBanState(existingBan.getName(), false);
+        deactivateBan(existingBan);
+        logger.info("成功解封玩家: " + existingBan.getName());
+        return null; // 成功解封，返回null表示没有错误
+    }
+
+    /**
+     * 批量解封：所有可解封的记录一次写入配置、一次发布快照
+     * @return 每个目标（按输入顺序）对应的结果，null表示成功，否则为失败原因
+     */
+    public Map<String, String> unbanPlayers(Collection<String> targets) {
+        Map<String, String> results = new LinkedHashMap<>();
+        List<BanEntry> found = new ArrayList<>(targets.size());
+        Set<BanEntry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String target : targets) {
+            String error = findBanToLift(target, found);
+            if (error == null && !seen.add(found.get(found.size() - 1))) {
+                found.remove(found.size() - 1);
+                error = "重复的目标";
+            }
+            results.put(target, error);
+        }
+        if (!found.isEmpty()) {
+            List<String> names = new ArrayList<>(found.size());
+            found.forEach(entry -> names.add(entry.getName()));
+            configManager.setBanStates(names, false);
+            deactivateBans(found);
+            logger.info("批量解封了 " + found.size() + " 个目标");
+        }
+        return results;
+    }
+
+    /**
+     * 验证解封目标并查找其生效中的封禁记录
+     * @param found 找到的记录追加到此列表
+     * @return 无法解封时返回错误信息，否则返回null
+     */
+    private String findBanToLift(String target, List<BanEntry> found) {
         // 输入验证
         if (target == null || target.trim().isEmpty()) {
             logger.warn("尝试解封空的玩家名");
             return "玩家名不能为空";
         }
-        if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
+        IpRangeTrie.Prefix address = IpRangeTrie.Prefix.parse(target);
+        if (address != null) {
+            target = address.toString();
+        } else if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
             logger.warn("无效的玩家名格式: " + target);
-            return "无效的玩家名格式";
+            return "无效的玩家名或IP格式";
         }
 
         // 检查是否存在有效的封禁记录
@@ -244,14 +731,56 @@ public class BanManager {
                 return "该玩家没有封禁记录！";
             }
         }
-
-        configManager.setBanState(target, false);
-        loadBans();
-        logger.info("成功解封玩家: " + target);
-        return null; // 成功解封，返回null表示没有错误
+        found.add(existingBan);
+        return null;
     }
 
     public String kickPlayer(String target, String reason) {
+        String error = checkKickTarget(target);
+        if (error != null) {
+            return error;
+        }
+
+        server.getAllPlayers().stream()
+                .filter(p -> p.getUsername().equalsIgnoreCase(target))
+                .forEach(p -> p.disconnect(Component.text("§c" + reason)));
+
+        logger.info("已踢出玩家: " + target + "，原因: " + reason);
+        return null; // 成功踢出，返回null表示没有错误
+    }
+
+    /**
+     * 批量踢出：验证全部目标后只遍历一次在线玩家
+     * @return 每个目标（按输入顺序）对应的结果，null表示成功，否则为失败原因（包括不在线）
+     */
+    public Map<String, String> kickPlayers(Collection<String> targets, String reason) {
+        Map<String, String> results = new LinkedHashMap<>();
+        Map<String, String> pending = new HashMap<>();
+        for (String target : targets) {
+            String error = checkKickTarget(target);
+            if (error == null && pending.putIfAbsent(BanIndex.nameKey(target), target) != null) {
+                error = "重复的目标";
+            }
+            results.put(target, error);
+        }
+        if (pending.isEmpty()) {
+            return results;
+        }
+        for (Player player : server.getAllPlayers()) {
+            if (pending.remove(BanIndex.nameKey(player.getUsername())) != null) {
+                player.disconnect(Component.text("§c" + reason));
+                logger.info("已踢出玩家: " + player.getUsername() + "，原因: " + reason);
+            }
+        }
+        pending.values().forEach(target -> results.put(target, "玩家不在线"));
+        return results;
+    }
+
+    /**
+     * 验证踢出目标
+     * @return 验证失败时返回错误信息，否则返回null
+     */
+    private String checkKickTarget(String target) {
         // 输入验证
         if (target == null || target.trim().isEmpty()) {
             logger.warn("尝试踢出空的玩家名");
@@ -268,50 +797,82 @@ public class BanManager {
             logger.warn("尝试踢出受保护的玩家: " + target);
             return protectionCheck;
         }
+        return null;
+    }
 
+    /**
+     * 踢出IP在指定IP段内的所有在线玩家（白名单中的玩家除外）
+     */
+    private void kickAddress(IpRangeTrie.Prefix address, String reason) {
         server.getAllPlayers().stream()
-                .filter(p -> p.getUsername().equalsIgnoreCase(target))
-                .forEach(p -> p.disconnect(Component.text("§c" + reason)));
-
-        logger.info("已踢出玩家: " + target + "，原因: " + reason);
-        return null; // 成功踢出，返回null表示没有错误
+                .filter(p -> address.contains(p.getRemoteAddress().getAddress()))
+                .filter(p -> !whitelistManager.isWhitelisted(p.getUsername()))
+                .forEach(p -> {
+                    p.disconnect(Component.text("§c" + reason));
+                    logger.info("已踢出玩家: " + p.getUsername() + "（IP " + address + "），原因: " + reason);
+                });
     }
 
     private BanEntry findBanEntry(String uuid, String ip, String username) {
-        return banEntries.values().stream()
-                .filter(entry -> !isExpired(entry))
-                .filter(entry ->
-                        entry.getUuid().equals(uuid) ||
-                                entry.getIp().equals(ip) ||
-                                entry.getName().equalsIgnoreCase(username)
-                )
-                .findFirst()
-                .orElse(null);
+        return findBanEntry(uuid, ip, username, true);
+    }
+
+    /**
+     * @param recordMetrics 是否计入布隆过滤器的统计；封禁后扫描在线玩家时不计入，统计只反映登录检查
+     */
+    private BanEntry findBanEntry(String uuid, String ip, String username, boolean recordMetrics) {
+        // 整个查找过程使用同一个快照，过滤器须在快照之后读取
+        BanIndex snapshot = bans.get();
+        BanFilter filter = banFilter;
+        if (filter != null && !filter.mightContain(username) && !filter.mightContain(uuid) && !filter.mightContain(ip)) {
+            if (recordMetrics) {
+                metrics.getBanFilter().recordNegative();
+            }
+            return snapshot.findByRange(ip);
+        }
+        // 优先检查玩家名（最可靠的标识符）
+        BanEntry entry = snapshot.findByName(username);
+        if (entry != null) {
+            // 如果是离线封禁（UUID或IP为null），更新信息
+            if ((entry.getUuid() == null || entry.getIp() == null) &&
+                uuid != null && !uuid.isEmpty() && ip != null && !ip.isEmpty()) {
+                updateBanEntryInfo(entry, uuid, ip);
+            }
+            return entry;
+        }
+        // UUID和IP为空时索引直接返回null
+        entry = snapshot.findByUuid(uuid);
+        if (entry != null) {
+            return entry;
+        }
+        // 精确IP未命中时再匹配IP段封禁
+        entry = snapshot.findByIp(ip);
+        if (entry == null && filter != null && recordMetrics) {
+            metrics.getBanFilter().recordFalsePositive();
+        }
+        return entry;
     }
 
     private boolean isExpired(BanEntry entry) {
-        return !entry.isPermanent() && entry.getEndTime() < System.currentTimeMillis();
+        return entry.isExpired();
     }
 
     /**
      * 查找指定玩家的现有封禁记录
-     * @param target 玩家名
+     * @param target 玩家名，或规范格式的IP/IP段
      * @return 如果找到有效的封禁记录则返回BanEntry，否则返回null
      */
     private BanEntry findExistingBan(String target) {
         // 首先检查内存中的活跃封禁记录
-        for (BanEntry entry : banEntries.values()) {
-            if (entry.getName().equalsIgnoreCase(target) && !isExpired(entry)) {
-                return entry;
-            }
+        BanEntry active = bans.get().findByName(target);
+        if (active != null) {
+            return active;
         }
 
-        // 检查配置文件中的所有封禁记录（包括已解封的）
-        Map<String, BanEntry> allBans = configManager.getBans();
-        for (BanEntry entry : allBans.values()) {
-            if (entry.getName().equalsIgnoreCase(target) && entry.getState() && !isExpired(entry)) {
-                return entry;
-            }
+        // 检查配置文件中的封禁记录（按名查找，不复制整张表）
+        BanEntry entry = configManager.findBan(target);
+        if (entry != null && entry.getState() && !isExpired(entry)) {
+            return entry;
         }
 
         return null;
@@ -323,13 +884,8 @@ public class BanManager {
      * @return 如果找到已解封的记录则返回BanEntry，否则返回null
      */
     private BanEntry findInactiveBan(String target) {
-        Map<String, BanEntry> allBans = configManager.getBans();
-        for (BanEntry entry : allBans.values()) {
-            if (entry.getName().equalsIgnoreCase(target) && !entry.getState()) {
-                return entry;
-            }
-        }
-        return null;
+        BanEntry entry = configManager.findBan(target);
+        return entry != null && !entry.getState() ? entry : null;
     }
 
     /**
@@ -349,4 +905,20 @@ public class BanManager {
 
         return info.toString();
     }
+
+    /**
+     * 关闭管理器，等待排队中的持久化操作写入完成
+     */
+    public void shutdown() {
+        persistenceExecutor.shutdown();
+        try {
+            if (!persistenceExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("仍有未完成的封禁信息写入，已强制关闭");
+                persistenceExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            persistenceExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,213 @@
+package org.plugin.bantools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 封禁数据二进制快照
+ * 文件名带有代号（bans-&lt;代号&gt;.dat），新快照总是写入新文件，不会覆盖仍被映射的旧文件；
+ * 加载时通过内存映射读取，普通封禁只解码定长头部和玩家名，其余字段在首次访问时才解码
+ *
+ * 文件格式：
+ * magic(8) version(int) generation(long) banCount(int) fakeBanCount(int)
+ * 每条记录：flags(byte) start_time(long) end_time(long) name uuid ip reason
+ * 字符串格式：长度(int，-1表示null) + UTF-8字节
+ */
+class BanSnapshotFile {
+    private static final byte[] MAGIC = "BTSNAP01".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final String PREFIX = "bans-";
+    private static final String SUFFIX = ".dat";
+
+    private static final int FLAG_STATE = 1;
+    private static final int FLAG_PERMANENT = 1 << 1;
+
+    private final Path directory;
+
+    BanSnapshotFile(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 查找代号最大的快照文件，不存在时返回null
+     */
+    Path latest() throws IOException {
+        Path latest = null;
+        long latestGeneration = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                long generation = generationOf(file);
+                if (generation > latestGeneration) {
+                    latestGeneration = generation;
+                    latest = file;
+                }
+            }
+        }
+        return latest;
+    }
+
+    static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 通过内存映射加载快照
+     * @return 快照的代号
+     */
+    long load(Path file, Map<String, BanEntry> bans, Map<String, FakeBanEntry> fakeBans) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION) {
+            throw new IOException("不是有效的BanTools快照文件: " + file.getFileName());
+        }
+        long generation = buffer.getLong();
+        int banCount = buffer.getInt();
+        int fakeBanCount = buffer.getInt();
+
+        for (int i = 0; i < banCount; i++) {
+            int flags = buffer.get();
+            long startTime = buffer.getLong();
+            long endTime = buffer.getLong();
+            String name = readString(buffer);
+            // uuid/ip/reason 暂不解码，只记录位置并跳过
+            int restOffset = buffer.position();
+            skipString(buffer);
+            skipString(buffer);
+            skipString(buffer);
+
+            LazyBanEntry entry = new LazyBanEntry(buffer, restOffset);
+            entry.setName(name);
+            entry.setStartTime(startTime);
+            entry.setEndTime((flags & FLAG_PERMANENT) != 0 ? null : endTime);
+            entry.setState((flags & FLAG_STATE) != 0);
+            bans.put(name, entry);
+        }
+
+        // 临时封禁数量通常很少，直接完整解码
+        for (int i = 0; i < fakeBanCount; i++) {
+            int flags = buffer.get();
+            FakeBanEntry entry = new FakeBanEntry();
+            entry.setStartTime(buffer.getLong());
+            entry.setEndTime(buffer.getLong());
+            entry.setName(readString(buffer));
+            entry.setUuid(readString(buffer));
+            entry.setIp(readString(buffer));
+            entry.setReason(readString(buffer));
+            entry.setState((flags & FLAG_STATE) != 0);
+            fakeBans.put(entry.getName(), entry);
+        }
+        return generation;
+    }
+
+    /**
+     * 写入新代号的快照文件（先写临时文件再重命名）
+     */
+    Path write(long generation, Collection<BanEntry> bans, Collection<FakeBanEntry> fakeBans) throws IOException {
+        Path target = directory.resolve(PREFIX + generation + SUFFIX);
+        Path temp = directory.resolve(PREFIX + generation + SUFFIX + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeInt(bans.size());
+            out.writeInt(fakeBans.size());
+
+            for (BanEntry entry : bans) {
+                int flags = (entry.getState() ? FLAG_STATE : 0) | (entry.isPermanent() ? FLAG_PERMANENT : 0);
+                out.writeByte(flags);
+                out.writeLong(entry.getStartTime());
+                out.writeLong(entry.isPermanent() ? 0 : entry.getEndTime());
+                writeString(out, entry.getName());
+                if (entry instanceof LazyBanEntry && ((LazyBanEntry) entry).copyEncodedTo(out)) {
+                    // 尚未解码的记录直接复制原始字节
+                    continue;
+                }
+                writeString(out, entry.getUuid());
+                writeString(out, entry.getIp());
+                writeString(out, entry.getReason());
+            }
+
+            for (FakeBanEntry entry : fakeBans) {
+                out.writeByte(entry.getState() ? FLAG_STATE : 0);
+                out.writeLong(entry.getStartTime());
+                out.writeLong(entry.getEndTime());
+                writeString(out, entry.getName());
+                writeString(out, entry.getUuid());
+                writeString(out, entry.getIp());
+                writeString(out, entry.getReason());
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * 删除代号小于指定值的旧快照
+     * 仍被映射的文件在部分系统上无法删除，失败时留到下次再清理
+     */
+    void deleteOlderThan(long generation) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                if (generationOf(file) < generation) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length > 0) {
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,31 @@
+package org.plugin.bantools;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 封禁数据的持久化后端，由 storage.type 选择
+ * ConfigManager中的内存表仍是数据的权威来源（addBan、setBanState等修改都先作用于内存），
+ * 后端只负责启动时加载，以及把合并后的修改批量写入存储
+ */
+interface BanStore {
+    /**
+     * 加载全部封禁与临时封禁记录到给定的表
+     */
+    void load(Map<String, BanEntry> bans, Map<String, FakeBanEntry> fakeBans) throws Exception;
+
+    /**
+     * 写入修改过的记录（新增或覆盖同名记录）
+     */
+    void write(List<BanEntry> bans, List<FakeBanEntry> fakeBans) throws Exception;
+
+    /**
+     * 写入全部记录（启动时数据需要合并、上次写入失败或关闭时使用）
+     */
+    void writeAll(List<BanEntry> bans, List<FakeBanEntry> fakeBans) throws Exception;
+
+    /**
+     * 关闭时释放文件句柄或数据库连接
+     */
+    void close();
+}
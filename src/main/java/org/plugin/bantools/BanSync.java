@@ -0,0 +1,457 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多代理之间的封禁同步
+ * 所有代理向共享目录下的同一个变更日志（bantools-sync.log）追加本地的修改，每行一条完整记录：
+ * "<代理ID>\t<与bans.journal相同格式的记录>"；读写日志时持有共享目录中bantools-sync.lock的文件锁，多个代理同时写入也不会交错
+ * （锁加在单独的锁文件上而不是日志本身，压缩时日志被整体替换，锁仍然有效）
+ * 每个代理定期从自己上次应用到的偏移量继续读取日志，把其他代理的记录应用到BanManager/FakeBanManager，
+ * 偏移量连同日志首行的日志ID保存在本地插件目录的sync.offset中，重启后从断点继续；日志被删除重建后ID改变，从头读取
+ * 偏移量是逻辑位置，日志首行另记录文件中第一条记录的逻辑位置（基准）；各代理的进度同时登记在共享目录的
+ * bantools-sync.offsets/中，所有已登记的代理都读过的部分达到阈值后，由读到该处的代理在独占锁内把剩余部分和提高后的基准
+ * 写入临时文件，再原子替换日志；任何时刻崩溃，共享目录中的日志都是完整的旧日志或完整的新日志
+ * 首次启用同步的代理刚从自己的配置完整加载过数据，从日志当前末尾开始读取，不重放之前的记录
+ * 记录是整条覆盖的最终状态，重复应用没有副作用；比本地同名记录旧的记录会被忽略（见ConfigManager.putSyncedBan）
+ */
+public class BanSync {
+    static final String LOG_FILE = "bantools-sync.log";
+    static final String LOCK_FILE = "bantools-sync.lock";
+    static final String OFFSETS_DIRECTORY = "bantools-sync.offsets";
+    private static final String HEADER_PREFIX = "#BanTools-sync ";
+    private static final String OFFSET_SUFFIX = ".offset";
+    // 所有代理都已读过的部分达到该大小时压缩日志
+    private static final long COMPACT_BYTES = 1024 * 1024;
+    // 同一JVM内的多个实例（测试时）不能对同一文件重复加文件锁，先在进程内互斥
+    private static final Object LOG_LOCK = new Object();
+
+    private final BanManager banManager;
+    private final FakeBanManager fakeBanManager;
+    private final Logger logger;
+    private final Path logFile;
+    private final Path lockFile;
+    private final Path offsetFile;
+    private final Path sharedOffsetFile;
+    private final String proxyId;
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "BanTools-Sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 写入失败的记录，下次轮询时重试，保持原有顺序
+    private final List<String> pending = new ArrayList<>();
+    // 以下两项只在轮询线程上读写（start中的初始化在轮询开始之前）
+    private String logId;
+    private long offset;
+
+    /**
+     * @param directory 各代理共享的目录
+     * @param dataDirectory 本代理的插件目录，保存读取进度
+     * @param proxyId 本代理的ID，为空时使用插件目录sync.id中保存的ID（首次随机生成），共享目录中的进度登记才不会因重启而失效
+     */
+    public BanSync(BanManager banManager, FakeBanManager fakeBanManager, Logger logger,
+                   Path directory, Path dataDirectory, String proxyId) {
+        this.banManager = banManager;
+        this.fakeBanManager = fakeBanManager;
+        this.logger = logger;
+        this.logFile = directory.resolve(LOG_FILE);
+        this.lockFile = directory.resolve(LOCK_FILE);
+        this.offsetFile = dataDirectory.resolve("sync.offset");
+        this.proxyId = proxyId == null || proxyId.trim().isEmpty() ?
+                generatedId(dataDirectory.resolve("sync.id")) : proxyId.trim().replace('\t', ' ');
+        this.sharedOffsetFile = directory.resolve(OFFSETS_DIRECTORY)
+                .resolve(this.proxyId.replaceAll("[^A-Za-z0-9._-]", "_") + OFFSET_SUFFIX);
+    }
+
+    /**
+     * 读取保存的进度并开始轮询共享日志；没有保存的进度时从日志当前末尾开始
+     */
+    public void start(long pollIntervalMillis) {
+        loadOffset();
+        if (logId == null) {
+            startAtEnd();
+        }
+        poller.scheduleWithFixedDelay(this::poll, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("已启用封禁同步，代理ID: " + proxyId + "，共享日志: " + logFile);
+    }
+
+    private String generatedId(Path idFile) {
+        try {
+            if (Files.exists(idFile)) {
+                String id = new String(Files.readAllBytes(idFile), StandardCharsets.UTF_8).trim();
+                if (!id.isEmpty()) {
+                    return id;
+                }
+            }
+            String id = UUID.randomUUID().toString();
+            writeAtomically(idFile, id.getBytes(StandardCharsets.UTF_8));
+            return id;
+        } catch (IOException e) {
+            logger.warn("无法保存生成的代理ID，本次使用临时ID: " + e.getMessage());
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    String getProxyId() {
+        return proxyId;
+    }
+
+    /**
+     * 把本地修改追加到共享日志（ConfigManager写盘时调用）
+     * @param records BanJournal格式的记录
+     */
+    void publish(List<String> records) {
+        synchronized (pending) {
+            for (String record : records) {
+                pending.add(proxyId + "\t" + record);
+            }
+            flushPending();
+        }
+    }
+
+    private void flushPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            append(pending);
+            pending.clear();
+        } catch (IOException e) {
+            logger.error("写入同步日志失败，" + pending.size() + " 条记录将在稍后重试: " + e.getMessage());
+        }
+    }
+
+    private void append(List<String> lines) throws IOException {
+        StringBuilder batch = new StringBuilder(lines.size() * 112);
+        for (String line : lines) {
+            batch.append(line).append('\n');
+        }
+        synchronized (LOG_LOCK) {
+            try (FileChannel lock = openLock();
+                 FileLock ignored = lock.lock();
+                 FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                String content = batch.toString();
+                if (size == 0) {
+                    // 日志由第一个写入者创建，首行是随机的日志ID和基准
+                    content = header(UUID.randomUUID().toString(), 0) + content;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+                long position = size;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * 新加入同步的代理从日志当前末尾开始，并立即登记进度，之后的记录在它读取之前不会被压缩；
+     * 日志还不存在时先创建只有首行的日志
+     */
+    private void startAtEnd() {
+        synchronized (LOG_LOCK) {
+            try (FileChannel lock = openLock();
+                 FileLock ignored = lock.lock();
+                 FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE,
+                         StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() == 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(header(UUID.randomUUID().toString(), 0).getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, buffer.position());
+                    }
+                    channel.force(false);
+                }
+                Header header = readHeader(channel);
+                if (header == null) {
+                    return;
+                }
+                logId = header.id;
+                offset = header.base + channel.size() - header.length;
+                saveOffset();
+                logger.info("本代理首次启用同步，从同步日志的当前末尾开始读取");
+            } catch (IOException e) {
+                logger.error("初始化同步进度失败，将从头读取同步日志", e);
+                logId = null;
+                offset = 0;
+            }
+        }
+    }
+
+    /**
+     * 读取并应用其他代理新追加的记录，只处理完整的行（末尾可能有正在写入的半行）
+     * 读取时持有共享锁，压缩日志时持有独占锁，读到的内容与首行的基准总是一致的
+     */
+    private void poll() {
+        try {
+            synchronized (pending) {
+                flushPending();
+            }
+            if (!Files.exists(logFile)) {
+                return;
+            }
+            String content;
+            long consumed;
+            synchronized (LOG_LOCK) {
+                try (FileChannel lock = openLock();
+                     FileLock ignored = lock.lock(0, Long.MAX_VALUE, true);
+                     FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    Header header = readHeader(channel);
+                    if (header == null) {
+                        return;
+                    }
+                    long end = header.base + size - header.length;
+                    if (!header.id.equals(logId) || offset > end) {
+                        // 新的或被重建的日志，从头读取
+                        logId = header.id;
+                        offset = header.base;
+                    } else if (offset < header.base) {
+                        // 本代理的进度没有登记在共享目录中（例如登记文件被删除），被压缩掉的记录已无法读取
+                        logger.warn("同步日志中本代理尚未读取的 " + (header.base - offset) + " 字节已被压缩，" +
+                                "可用 /bt export 与 /bt import 重新统一数据");
+                        offset = header.base;
+                    }
+                    if (offset >= end) {
+                        return;
+                    }
+                    long position = header.length + offset - header.base;
+                    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - position, 8 * 1024 * 1024));
+                    while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                        // 读满缓冲区或到达文件末尾
+                    }
+                    int length = buffer.position();
+                    while (length > 0 && buffer.get(length - 1) != '\n') {
+                        length--;
+                    }
+                    if (length == 0) {
+                        return;
+                    }
+                    content = new String(buffer.array(), 0, length, StandardCharsets.UTF_8);
+                    consumed = length;
+                }
+            }
+            int applied = apply(content);
+            offset += consumed;
+            saveOffset();
+            if (applied > 0) {
+                logger.info("从同步日志应用了 " + applied + " 条其他代理的封禁修改");
+            }
+            compactIfConsumed();
+        } catch (Exception e) {
+            logger.error("读取同步日志失败", e);
+        }
+    }
+
+    /**
+     * 共享目录中登记的所有代理（日志ID与当前日志相同）都已读过的部分达到阈值时，在独占锁内把其余部分连同
+     * 提高到该位置的基准写入临时文件并刷盘，再原子替换日志；日志ID不变，各代理的逻辑偏移量仍然有效
+     */
+    private void compactIfConsumed() throws IOException {
+        synchronized (LOG_LOCK) {
+            try (FileChannel lock = openLock();
+                 FileLock ignored = lock.lock()) {
+                Path temp = logFile.resolveSibling(LOG_FILE + ".tmp");
+                long removed;
+                // 先关闭日志再替换（Windows上无法替换仍打开着的文件）
+                try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    Header header = readHeader(channel);
+                    if (header == null || size - header.length < COMPACT_BYTES) {
+                        return;
+                    }
+                    long point = minimumOffset(header.id);
+                    if (point == Long.MAX_VALUE || point - header.base < COMPACT_BYTES) {
+                        return;
+                    }
+                    long source = header.length + point - header.base;
+                    if (source > size) {
+                        return;
+                    }
+                    try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        ByteBuffer newHeader = ByteBuffer.wrap(header(header.id, point).getBytes(StandardCharsets.UTF_8));
+                        while (newHeader.hasRemaining()) {
+                            target.write(newHeader);
+                        }
+                        while (source < size) {
+                            source += channel.transferTo(source, size - source, target);
+                        }
+                        target.force(false);
+                    }
+                    removed = point - header.base;
+                }
+                Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logger.info("已压缩同步日志，删去了所有代理都已读取的 " + removed + " 字节");
+            }
+        }
+    }
+
+    private FileChannel openLock() throws IOException {
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 共享目录中登记的、属于指定日志的最小读取进度；没有任何登记或有登记文件无法读取时返回Long.MAX_VALUE（不压缩）
+     */
+    private long minimumOffset(String id) throws IOException {
+        long minimum = Long.MAX_VALUE;
+        Path directory = sharedOffsetFile.getParent();
+        if (!Files.isDirectory(directory)) {
+            return minimum;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + OFFSET_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    String[] parts = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(" ");
+                    if (parts.length == 2 && parts[0].equals(id)) {
+                        minimum = Math.min(minimum, Long.parseLong(parts[1]));
+                    }
+                } catch (IOException | NumberFormatException e) {
+                    return Long.MAX_VALUE;
+                }
+            }
+        }
+        return minimum;
+    }
+
+    private static String header(String id, long base) {
+        return HEADER_PREFIX + id + " " + base + "\n";
+    }
+
+    /**
+     * 读取首行："#BanTools-sync <日志ID> <基准>"
+     */
+    private static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_PREFIX.length() + 96);
+        channel.read(buffer, 0);
+        String head = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        int newline = head.indexOf('\n');
+        if (newline < 0 || !head.startsWith(HEADER_PREFIX)) {
+            return null;
+        }
+        String[] fields = head.substring(HEADER_PREFIX.length(), newline).split(" ");
+        try {
+            long base = fields.length > 1 ? Long.parseLong(fields[1]) : 0;
+            // 首行只含ASCII字符，字符数即字节数
+            return new Header(fields[0], base, newline + 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 临时封禁逐条应用；封禁记录整批交给BanManager，只发布一次快照、只扫描一次在线玩家
+     */
+    private int apply(String content) {
+        int applied = 0;
+        List<BanEntry> syncedBans = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            int separator = line.indexOf('\t');
+            if (separator <= 0 || line.substring(0, separator).equals(proxyId)) {
+                continue;
+            }
+            try {
+                String[] fields = line.substring(separator + 1).split("\t", -1);
+                if (BanJournal.BAN.equals(fields[0]) && fields.length == 8) {
+                    syncedBans.add(BanJournal.decodeBan(fields));
+                    applied++;
+                } else if (BanJournal.FAKEBAN.equals(fields[0]) && fields.length == 8) {
+                    fakeBanManager.applySyncedFakeBan(BanJournal.decodeFakeBan(fields));
+                    applied++;
+                } else {
+                    logger.warn("无法识别的同步记录，已跳过: " + line);
+                }
+            } catch (Exception e) {
+                logger.error("应用同步记录失败: " + line, e);
+            }
+        }
+        if (!syncedBans.isEmpty()) {
+            try {
+                banManager.applySyncedBans(syncedBans);
+            } catch (Exception e) {
+                logger.error("应用同步的封禁记录失败", e);
+            }
+        }
+        return applied;
+    }
+
+    private void loadOffset() {
+        try {
+            if (!Files.exists(offsetFile)) {
+                return;
+            }
+            String[] parts = new String(Files.readAllBytes(offsetFile), StandardCharsets.UTF_8).trim().split(" ");
+            if (parts.length == 2) {
+                logId = parts[0];
+                offset = Long.parseLong(parts[1]);
+            }
+        } catch (Exception e) {
+            logger.warn("读取同步进度失败，将从头读取同步日志: " + e.getMessage());
+            logId = null;
+            offset = 0;
+        }
+    }
+
+    /**
+     * 保存到本地插件目录，同时登记到共享目录供压缩时判断
+     */
+    private void saveOffset() throws IOException {
+        byte[] content = (logId + " " + offset).getBytes(StandardCharsets.UTF_8);
+        writeAtomically(offsetFile, content);
+        Files.createDirectories(sharedOffsetFile.getParent());
+        writeAtomically(sharedOffsetFile, content);
+    }
+
+    private static void writeAtomically(Path file, byte[] content) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, content);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 停止轮询；之后ConfigManager关闭时的最后一次写盘仍会同步追加到共享日志
+     */
+    public void shutdown() {
+        poller.shutdown();
+        try {
+            poller.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Header {
+        final String id;
+        // 文件中第一条记录的逻辑位置
+        final long base;
+        // 首行的字节数
+        final int length;
+
+        Header(String id, long base, int length) {
+            this.id = id;
+            this.base = base;
+            this.length = length;
+        }
+    }
+}
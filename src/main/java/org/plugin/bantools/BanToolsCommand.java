@@ -7,21 +7,47 @@ import com.velocitypowered.api.proxy.ProxyServer;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class BanToolsCommand implements SimpleCommand {
+    // 批量目标：@file:文件 每行一个目标
+    private static final String FILE_TARGET_PREFIX = "@file:";
+    // 批量结果中最多逐条显示的失败目标数
+    private static final int BATCH_REPORT_LIMIT = 20;
+    // 玩家名补全最多返回的条数
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final DateTimeFormatter HISTORY_TIME =
+            DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm").withZone(ZoneId.systemDefault());
+
     private final BanManager banManager;
     private final ConfigManager configManager;
     private final FakeBanManager fakeBanManager;
     private final ProxyServer server;
-
-    public BanToolsCommand(BanManager banManager, ConfigManager configManager,
-                          FakeBanManager fakeBanManager, ProxyServer server) {
+    private final BanImporter banImporter;
+    private final BanExporter banExporter;
+    private final OnlinePlayers onlinePlayers;
+    private final ConfigReloader configReloader;
+
+    public BanToolsCommand(BanManager banManager, ConfigManager configManager, FakeBanManager fakeBanManager,
+                          ProxyServer server, BanImporter banImporter, BanExporter banExporter,
+                          OnlinePlayers onlinePlayers, ConfigReloader configReloader) {
         this.banManager = banManager;
         this.configManager = configManager;
         this.fakeBanManager = fakeBanManager;
         this.server = server;
+        this.banImporter = banImporter;
+        this.banExporter = banExporter;
+        this.onlinePlayers = onlinePlayers;
+        this.configReloader = configReloader;
     }
 
     @Override
@@ -51,8 +77,20 @@ public class BanToolsCommand implements SimpleCommand {
                 handleKickCommand(args, source);
                 break;
             case "reload":
-                banManager.loadBans();
-                source.sendMessage(Component.text("配置已重新加载", NamedTextColor.GREEN));
+                configReloader.reloadNow(message -> source.sendMessage(Component.text(message, NamedTextColor.GREEN)));
+                break;
+            case "stats":
+                handleStatsCommand(source);
+                break;
+            case "import":
+                handleImportCommand(args, source);
+                break;
+            case "export":
+                handleExportCommand(args, source);
+                break;
+            case "history":
+            case "search":
+                handleHistoryCommand(args, source);
                 break;
             default:
                 sendHelpMessage(source);
@@ -76,6 +114,15 @@ public class BanToolsCommand implements SimpleCommand {
             duration = args[3];
         }
 
+        if (isBatchTarget(target)) {
+            Map<String, Integer> lineNumbers = new HashMap<>();
+            List<String> targets = expandTargets(target, lineNumbers, source);
+            if (targets != null) {
+                sendBatchResults("封禁", banManager.banPlayers(targets, reason, duration), lineNumbers, source);
+            }
+            return;
+        }
+
         String result = banManager.banPlayer(target, reason, duration);
         if (result != null) {
             // 封禁失败，显示错误信息
@@ -93,13 +140,22 @@ public class BanToolsCommand implements SimpleCommand {
         }
 
         String target = args[1].trim();
+        if (isBatchTarget(target)) {
+            Map<String, Integer> lineNumbers = new HashMap<>();
+            List<String> targets = expandTargets(target, lineNumbers, source);
+            if (targets != null) {
+                sendBatchResults("解封", banManager.unbanPlayers(targets), lineNumbers, source);
+            }
+            return;
+        }
         // 输入验证
         if (target.isEmpty()) {
             source.sendMessage(Component.text("玩家名不能为空", NamedTextColor.RED));
             return;
         }
-        if (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$")) {
-            source.sendMessage(Component.text("无效的玩家名格式", NamedTextColor.RED));
+        if (IpRangeTrie.Prefix.parse(target) == null &&
+                (target.length() > 16 || !target.matches("^[a-zA-Z0-9_]{1,16}$"))) {
+            source.sendMessage(Component.text("无效的玩家名或IP格式", NamedTextColor.RED));
             return;
         }
 
@@ -164,6 +220,15 @@ public class BanToolsCommand implements SimpleCommand {
             reason = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
         }
 
+        if (isBatchTarget(target)) {
+            Map<String, Integer> lineNumbers = new HashMap<>();
+            List<String> targets = expandTargets(target, lineNumbers, source);
+            if (targets != null) {
+                sendBatchResults("踢出", banManager.kickPlayers(targets, reason), lineNumbers, source);
+            }
+            return;
+        }
+
         String result = banManager.kickPlayer(target, reason);
         if (result != null) {
             // 踢出失败，显示错误信息
@@ -174,6 +239,222 @@ public class BanToolsCommand implements SimpleCommand {
         }
     }
 
+    private void handleStatsCommand(CommandSource source) {
+        BanToolsMetrics metrics = configManager.getMetrics();
+        BanToolsMetrics.Histogram latency = metrics.getLoginLatency();
+
+        StringBuilder rejects = new StringBuilder();
+        for (BanToolsMetrics.RejectType type : BanToolsMetrics.RejectType.values()) {
+            if (rejects.length() > 0) {
+                rejects.append(" / ");
+            }
+            rejects.append(type.getDisplayName()).append(' ').append(metrics.getRejects(type));
+        }
+
+        source.sendMessage(Component.text("BanTools 运行统计", NamedTextColor.YELLOW));
+        source.sendMessage(Component.text("登录检查: " + metrics.getLoginChecks() + " 次，拒绝 " +
+                metrics.getTotalRejects() + " 次（" + rejects + "），其中验证前拒绝 " +
+                metrics.getPreLoginRejects() + " 次", NamedTextColor.GOLD));
+        source.sendMessage(Component.text("检查耗时: 平均 " + formatNanos(latency.getMean()) +
+                "，p50 ≤ " + formatNanos(latency.getPercentile(0.5)) +
+                "，p99 ≤ " + formatNanos(latency.getPercentile(0.99)) +
+                "，最大 " + formatNanos(latency.getMax()), NamedTextColor.GOLD));
+        source.sendMessage(Component.text("生效封禁: " + metrics.getGauge("active_bans") +
+                "，临时封禁: " + metrics.getGauge("active_fakebans") +
+                "，待确认临时封禁: " + metrics.getGauge("pending_fakebans"), NamedTextColor.GOLD));
+        source.sendMessage(Component.text(formatFilter("封禁过滤器", banManager.getFilter(), metrics.getBanFilter()),
+                NamedTextColor.GOLD));
+        source.sendMessage(Component.text(formatFilter("临时封禁过滤器", fakeBanManager.getFilter(),
+                metrics.getFakeBanFilter()), NamedTextColor.GOLD));
+        source.sendMessage(Component.text(formatTimer("快照写入", metrics.getSnapshotSave()), NamedTextColor.GOLD));
+        source.sendMessage(Component.text(formatTimer("日志追加", metrics.getJournalAppend()), NamedTextColor.GOLD));
+        source.sendMessage(Component.text(formatTimer("配置加载", metrics.getConfigLoad()), NamedTextColor.GOLD));
+        source.sendMessage(Component.text(formatTimer("重新加载", metrics.getBanReload()), NamedTextColor.GOLD));
+    }
+
+    private void handleImportCommand(String[] args, CommandSource source) {
+        if (args.length < 3) {
+            sendImportUsage(source);
+            return;
+        }
+        // 文件路径中可能含有空格
+        String file = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
+        String result = banImporter.startImport(args[1], file,
+                message -> source.sendMessage(Component.text(message, NamedTextColor.GOLD)));
+        if (result != null) {
+            source.sendMessage(Component.text(result, NamedTextColor.RED));
+        } else {
+            source.sendMessage(Component.text("开始从 " + file + " 导入封禁记录，完成后会通知你", NamedTextColor.GREEN));
+        }
+    }
+
+    private void handleExportCommand(String[] args, CommandSource source) {
+        if (args.length < 3) {
+            sendExportUsage(source);
+            return;
+        }
+        List<String> options = Arrays.asList(args).subList(3, args.length);
+        String result = banExporter.startExport(args[1], args[2], options,
+                message -> source.sendMessage(Component.text(message, NamedTextColor.GOLD)));
+        if (result != null) {
+            source.sendMessage(Component.text(result, NamedTextColor.RED));
+        } else {
+            source.sendMessage(Component.text("开始导出封禁记录到 " + args[2] + "，完成后会通知你", NamedTextColor.GREEN));
+        }
+    }
+
+    private void handleHistoryCommand(String[] args, CommandSource source) {
+        BanHistory.Query query = new BanHistory.Query();
+        List<String> options = new ArrayList<>();
+        int page = 1;
+        for (int i = 1; i < args.length; i++) {
+            // 单独的数字为页码
+            if (args[i].matches("\\d{1,6}")) {
+                page = Math.max(1, Integer.parseInt(args[i]));
+                continue;
+            }
+            String error = query.parse(args[i]);
+            if (error != null) {
+                source.sendMessage(Component.text(error, NamedTextColor.RED));
+                sendHistoryUsage(source);
+                return;
+            }
+            options.add(args[i]);
+        }
+
+        BanHistory.Page result = configManager.getHistory().search(query, page);
+        if (result.getEntries().isEmpty()) {
+            source.sendMessage(Component.text(page == 1 ? "没有符合条件的封禁记录" : "第 " + page + " 页没有记录",
+                    NamedTextColor.YELLOW));
+            return;
+        }
+        source.sendMessage(Component.text("封禁记录 第 " + result.getPage() + " 页", NamedTextColor.YELLOW));
+        for (BanEntry entry : result.getEntries()) {
+            source.sendMessage(Component.text(formatHistoryEntry(entry), NamedTextColor.GOLD));
+        }
+        if (result.hasMore()) {
+            options.add(0, "/bt " + args[0].toLowerCase());
+            options.add(String.valueOf(page + 1));
+            source.sendMessage(Component.text("输入 " + String.join(" ", options) + " 查看下一页", NamedTextColor.GRAY));
+        }
+    }
+
+    private static String formatHistoryEntry(BanEntry entry) {
+        String state;
+        if (!entry.getState()) {
+            state = "已解封";
+        } else if (entry.isExpired()) {
+            state = "已过期";
+        } else {
+            state = "生效中";
+        }
+        String end = entry.isPermanent() ? "永久" : HISTORY_TIME.format(Instant.ofEpochMilli(entry.getEndTime()));
+        return entry.getName() + " | " + entry.getReason() + " | " +
+                HISTORY_TIME.format(Instant.ofEpochMilli(entry.getStartTime())) + " 至 " + end + " | " + state;
+    }
+
+    /**
+     * 是否为批量目标：逗号分隔的列表或 @file:文件
+     */
+    private static boolean isBatchTarget(String argument) {
+        return argument.indexOf(',') >= 0 || argument.startsWith(FILE_TARGET_PREFIX);
+    }
+
+    /**
+     * 展开批量目标并去掉空白项和重复项；@file: 文件每行一个目标（也可用逗号分隔），#开头的行为注释
+     * 文件必须位于插件目录内，相对路径以插件目录为准
+     * @param lineNumbers 来自文件时填入每个目标所在的行号，报告失败时只显示行号而不回显文件内容
+     * @return 文件无法读取或没有任何目标时发送错误信息并返回null
+     */
+    private List<String> expandTargets(String argument, Map<String, Integer> lineNumbers, CommandSource source) {
+        List<String> lines;
+        boolean fromFile = argument.startsWith(FILE_TARGET_PREFIX);
+        if (fromFile) {
+            Path file = configManager.resolveDataFile(argument.substring(FILE_TARGET_PREFIX.length()));
+            if (file == null) {
+                source.sendMessage(Component.text("目标文件必须位于插件目录内", NamedTextColor.RED));
+                return null;
+            }
+            try {
+                lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                source.sendMessage(Component.text("无法读取目标文件: " + file.getFileName(), NamedTextColor.RED));
+                return null;
+            }
+        } else {
+            lines = Collections.singletonList(argument);
+        }
+        Set<String> targets = new LinkedHashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.trim().startsWith("#")) {
+                continue;
+            }
+            for (String item : line.split(",")) {
+                if (!item.trim().isEmpty() && targets.add(item.trim()) && fromFile) {
+                    lineNumbers.put(item.trim(), i + 1);
+                }
+            }
+        }
+        if (targets.isEmpty()) {
+            source.sendMessage(Component.text("没有有效的目标", NamedTextColor.RED));
+            return null;
+        }
+        return new ArrayList<>(targets);
+    }
+
+    /**
+     * 显示批量操作的汇总：成功与失败数量、成功的目标，以及每个失败目标的原因
+     * 目标来自文件时失败项只显示行号，无效的行可能是文件里的任意内容
+     */
+    private static void sendBatchResults(String action, Map<String, String> results,
+                                         Map<String, Integer> lineNumbers, CommandSource source) {
+        List<String> succeeded = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        results.forEach((target, error) -> {
+            if (error == null) {
+                succeeded.add(target);
+            } else {
+                Integer line = lineNumbers.get(target);
+                failed.add((line != null ? "第 " + line + " 行" : target) + ": " + error);
+            }
+        });
+        source.sendMessage(Component.text("批量" + action + "完成: 成功 " + succeeded.size() + " 个，失败 " + failed.size() + " 个",
+                failed.isEmpty() ? NamedTextColor.GREEN : NamedTextColor.YELLOW));
+        if (!succeeded.isEmpty()) {
+            source.sendMessage(Component.text("已" + action + ": " + String.join(", ", succeeded), NamedTextColor.GREEN));
+        }
+        for (int i = 0; i < failed.size() && i < BATCH_REPORT_LIMIT; i++) {
+            source.sendMessage(Component.text(failed.get(i), NamedTextColor.RED));
+        }
+        if (failed.size() > BATCH_REPORT_LIMIT) {
+            source.sendMessage(Component.text("另有 " + (failed.size() - BATCH_REPORT_LIMIT) + " 个失败的目标未显示",
+                    NamedTextColor.RED));
+        }
+    }
+
+    private static String formatTimer(String name, BanToolsMetrics.Histogram histogram) {
+        return name + ": " + histogram.getCount() + " 次，平均 " + formatNanos(histogram.getMean()) +
+                "，最大 " + formatNanos(histogram.getMax());
+    }
+
+    private static String formatFilter(String name, BanFilter filter, BanToolsMetrics.FilterCounters counters) {
+        if (filter == null) {
+            return name + ": 未启用";
+        }
+        return String.format("%s: %.1f KB，%d/%d 个键，预计误判率 %.3f%%（目标 %.3f%%），直接放行 %d 次，误判 %d 次",
+                name, filter.getMemoryBytes() / 1024.0, filter.getInsertions(), filter.getCapacity(),
+                filter.getExpectedFpp() * 100, filter.getTargetFpp() * 100,
+                counters.getNegatives(), counters.getFalsePositives());
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000_000) {
+            return String.format("%.1fµs", nanos / 1_000.0);
+        }
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
     private void sendHelpMessage(CommandSource source) {
         source.sendMessage(Component.text("BanTools 使用说明", NamedTextColor.YELLOW));
         sendBanUsage(source);
@@ -181,15 +462,21 @@ public class BanToolsCommand implements SimpleCommand {
         sendFakeBanUsage(source);
         sendUnFakeBanUsage(source);
         sendKickUsage(source);
+        source.sendMessage(Component.text("ban/unban/kick 的目标可写为 名1,名2,... 或 @file:文件（每行一个）进行批量操作",
+                NamedTextColor.GOLD));
         source.sendMessage(Component.text("/bt reload - 重新加载配置", NamedTextColor.GOLD));
+        source.sendMessage(Component.text("/bt stats - 查看运行统计", NamedTextColor.GOLD));
+        source.sendMessage(Component.text("/bt import <格式> <文件> - 批量导入封禁记录", NamedTextColor.GOLD));
+        source.sendMessage(Component.text("/bt export <jsonl|csv> <文件> [条件] - 导出封禁记录", NamedTextColor.GOLD));
+        source.sendMessage(Component.text("/bt history [条件] [页码] - 查询封禁历史", NamedTextColor.GOLD));
     }
 
     private void sendBanUsage(CommandSource source) {
-        source.sendMessage(Component.text("封禁用法: /bt ban <玩家> [原因] [时长]", NamedTextColor.RED));
+        source.sendMessage(Component.text("封禁用法: /bt ban <玩家|IP|IP段> [原因] [时长]", NamedTextColor.RED));
     }
 
     private void sendUnbanUsage(CommandSource source) {
-        source.sendMessage(Component.text("解封用法: /bt unban <玩家>", NamedTextColor.RED));
+        source.sendMessage(Component.text("解封用法: /bt unban <玩家|IP|IP段>", NamedTextColor.RED));
     }
 
     private void sendFakeBanUsage(CommandSource source) {
@@ -200,6 +487,22 @@ public class BanToolsCommand implements SimpleCommand {
         source.sendMessage(Component.text("解除临时封禁用法: /bt unfakeban <玩家>", NamedTextColor.RED));
     }
 
+    private void sendImportUsage(CommandSource source) {
+        source.sendMessage(Component.text("导入用法: /bt import <" + BanImporter.formatIds().replace(", ", "|") +
+                "> <文件>", NamedTextColor.RED));
+    }
+
+    private void sendExportUsage(CommandSource source) {
+        source.sendMessage(Component.text("导出用法: /bt export <jsonl|csv> <文件> [type=ban|fakeban|all] " +
+                "[state=active|inactive|all] [from=yyyy/MM/dd] [to=yyyy/MM/dd]", NamedTextColor.RED));
+    }
+
+    private void sendHistoryUsage(CommandSource source) {
+        source.sendMessage(Component.text("查询用法: /bt history [name=玩家名前缀] [reason=关键词] " +
+                "[state=active|inactive|all] [permanent=true|false] [from=yyyy/MM/dd] [to=yyyy/MM/dd] " +
+                "[end_from=yyyy/MM/dd] [end_to=yyyy/MM/dd] [页码]", NamedTextColor.RED));
+    }
+
     private void sendKickUsage(CommandSource source) {
         source.sendMessage(Component.text("踢出用法: /bt kick <玩家> [原因]", NamedTextColor.RED));
     }
@@ -226,6 +529,15 @@ public class BanToolsCommand implements SimpleCommand {
                 return invocation.source().hasPermission("bantools.command.kick");
             case "reload":
                 return invocation.source().hasPermission("bantools.command.reload");
+            case "stats":
+                return invocation.source().hasPermission("bantools.command.stats");
+            case "import":
+                return invocation.source().hasPermission("bantools.command.import");
+            case "export":
+                return invocation.source().hasPermission("bantools.command.export");
+            case "history":
+            case "search":
+                return invocation.source().hasPermission("bantools.command.history");
             default:
                 return false;
         }
@@ -260,6 +572,21 @@ public class BanToolsCommand implements SimpleCommand {
             if (source.hasPermission("bantools.command.reload") && "reload".startsWith(input)) {
                 suggestions.add("reload");
             }
+            if (source.hasPermission("bantools.command.stats") && "stats".startsWith(input)) {
+                suggestions.add("stats");
+            }
+            if (source.hasPermission("bantools.command.import") && "import".startsWith(input)) {
+                suggestions.add("import");
+            }
+            if (source.hasPermission("bantools.command.export") && "export".startsWith(input)) {
+                suggestions.add("export");
+            }
+            if (source.hasPermission("bantools.command.history") && "history".startsWith(input)) {
+                suggestions.add("history");
+            }
+            if (source.hasPermission("bantools.command.history") && "search".startsWith(input)) {
+                suggestions.add("search");
+            }
 
             return suggestions;
         }
@@ -275,6 +602,13 @@ public class BanToolsCommand implements SimpleCommand {
                 return suggestPlayersForUnban(args);
             case "unfakeban":
                 return suggestPlayersForUnfakeban(args);
+            case "import":
+                return suggestImportFormats(args);
+            case "export":
+                return suggestExportArguments(args);
+            case "history":
+            case "search":
+                return suggestHistoryOptions(args);
             default:
                 return Collections.emptyList();
         }
@@ -285,13 +619,9 @@ public class BanToolsCommand implements SimpleCommand {
      */
     private List<String> suggestPlayersForBan(String[] args) {
         if (args.length == 2) {
-            // 第二个参数：玩家名
-            String input = args[1].toLowerCase();
-            return server.getAllPlayers().stream()
-                    .map(Player::getUsername)
-                    .filter(name -> name.toLowerCase().startsWith(input))
-                    .filter(name -> !banManager.isWhitelisted(name)) // 过滤白名单玩家
-                    .collect(Collectors.toList());
+            // 第二个参数：玩家名（过滤白名单玩家）；ban/kick支持批量目标，补全逗号后的最后一项
+            return completeNames(args[1], onlinePlayers.getNames(), name -> !banManager.isWhitelisted(name),
+                    !"fakeban".equals(args[0].toLowerCase()));
         } else if (args.length == 3) {
             // 第三个参数：原因提示
             return Arrays.asList("违反服务器规则", "作弊行为", "恶意破坏", "挂机行为", "不当言论");
@@ -303,28 +633,86 @@ public class BanToolsCommand implements SimpleCommand {
     }
 
     /**
-     * 为unban命令提供被封禁玩家名补全
+     * 为import命令提供格式补全
      */
-    private List<String> suggestPlayersForUnban(String[] args) {
+    private List<String> suggestImportFormats(String[] args) {
         if (args.length == 2) {
             String input = args[1].toLowerCase();
-            return banManager.getBannedPlayers().stream()
-                    .filter(name -> name.toLowerCase().startsWith(input))
+            return Arrays.stream(BanImporter.Format.values())
+                    .map(BanImporter.Format::getId)
+                    .filter(id -> id.startsWith(input))
                     .collect(Collectors.toList());
         }
         return Collections.emptyList();
     }
 
+    /**
+     * 为export命令提供格式和导出条件补全
+     */
+    private List<String> suggestExportArguments(String[] args) {
+        String input = args[args.length - 1].toLowerCase();
+        List<String> candidates;
+        if (args.length == 2) {
+            candidates = Arrays.asList("jsonl", "csv");
+        } else if (args.length >= 4) {
+            candidates = Arrays.asList("type=ban", "type=fakeban", "type=all",
+                    "state=active", "state=inactive", "state=all", "from=", "to=");
+        } else {
+            return Collections.emptyList();
+        }
+        return candidates.stream()
+                .filter(candidate -> candidate.startsWith(input))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 为history命令提供查询条件补全
+     */
+    private List<String> suggestHistoryOptions(String[] args) {
+        String input = args[args.length - 1].toLowerCase();
+        return Arrays.asList("name=", "reason=", "state=active", "state=inactive", "state=all",
+                        "permanent=true", "permanent=false", "from=", "to=", "end_from=", "end_to=").stream()
+                .filter(candidate -> candidate.startsWith(input))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 为unban命令提供被封禁玩家名补全
+     */
+    private List<String> suggestPlayersForUnban(String[] args) {
+        if (args.length == 2) {
+            return completeNames(args[1], banManager.getBannedNames(), name -> true, true);
+        }
+        return Collections.emptyList();
+    }
+
     /**
      * 为unfakeban命令提供被临时封禁玩家名补全
      */
     private List<String> suggestPlayersForUnfakeban(String[] args) {
         if (args.length == 2) {
-            String input = args[1].toLowerCase();
-            return fakeBanManager.getFakeBannedPlayers().stream()
-                    .filter(name -> name.toLowerCase().startsWith(input))
-                    .collect(Collectors.toList());
+            return completeNames(args[1], fakeBanManager.getFakeBannedNames(), name -> true, false);
         }
         return Collections.emptyList();
     }
+
+    /**
+     * 从补全索引中按前缀取最多MAX_SUGGESTIONS个名称
+     * @param batch 是否支持逗号分隔的批量目标（只补全最后一项，前面的部分原样保留）
+     */
+    private static List<String> completeNames(String input, NameCompletionIndex index,
+                                              Predicate<String> filter, boolean batch) {
+        if (input.startsWith(FILE_TARGET_PREFIX)) {
+            return Collections.emptyList();
+        }
+        int comma = batch ? input.lastIndexOf(',') : -1;
+        String head = input.substring(0, comma + 1);
+        List<String> names = index.complete(input.substring(comma + 1), MAX_SUGGESTIONS, filter);
+        if (head.isEmpty()) {
+            return names;
+        }
+        List<String> result = new ArrayList<>(names.size());
+        names.forEach(name -> result.add(head + name));
+        return result;
+    }
 }
\ No newline at end of file
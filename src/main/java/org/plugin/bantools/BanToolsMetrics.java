@@ -0,0 +1,239 @@
+package org.plugin.bantools;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 运行时统计
+ * 热路径上只做LongAdder累加（分段计数，无锁竞争），读取时再汇总；
+ * 耗时使用按2的幂分桶的直方图，记录一次只需一次位运算和一次累加
+ */
+public class BanToolsMetrics {
+
+    /**
+     * 登录被拒绝的原因
+     */
+    public enum RejectType {
+        NAME("玩家名"),
+        UUID("UUID"),
+        IP("IP"),
+        IP_RANGE("IP段"),
+        FAKEBAN("临时封禁");
+
+        private final String displayName;
+
+        RejectType(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final LongAdder loginChecks = new LongAdder();
+    private final LongAdder[] rejects = new LongAdder[RejectType.values().length];
+    private final LongAdder preLoginRejects = new LongAdder();
+    private final Histogram loginLatency = new Histogram();
+    private final Histogram journalAppend = new Histogram();
+    private final Histogram snapshotSave = new Histogram();
+    private final Histogram configLoad = new Histogram();
+    private final Histogram banReload = new Histogram();
+    private final FilterCounters banFilter = new FilterCounters();
+    private final FilterCounters fakeBanFilter = new FilterCounters();
+    // 瞬时值（如活跃临时封禁数）在读取时才计算，不占用热路径
+    private final Map<String, LongSupplier> gauges = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public BanToolsMetrics() {
+        for (int i = 0; i < rejects.length; i++) {
+            rejects[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次登录检查
+     * @param nanos 检查耗时（纳秒）
+     * @param rejectType 被拒绝的原因，放行时为null
+     */
+    public void recordLoginCheck(long nanos, RejectType rejectType) {
+        loginChecks.increment();
+        loginLatency.record(nanos);
+        if (rejectType != null) {
+            rejects[rejectType.ordinal()].increment();
+        }
+    }
+
+    /**
+     * 记录一次在验证前（PreLoginEvent）就被拒绝的连接，拒绝本身已由recordLoginCheck计入
+     */
+    public void recordPreLoginReject() {
+        preLoginRejects.increment();
+    }
+
+    public long getLoginChecks() { return loginChecks.sum(); }
+
+    public long getPreLoginRejects() { return preLoginRejects.sum(); }
+
+    public long getRejects(RejectType type) { return rejects[type.ordinal()].sum(); }
+
+    public long getTotalRejects() {
+        long total = 0;
+        for (LongAdder adder : rejects) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /** 登录检查耗时 */
+    public Histogram getLoginLatency() { return loginLatency; }
+
+    /** 追加变更日志的耗时 */
+    public Histogram getJournalAppend() { return journalAppend; }
+
+    /** 写入完整快照（config.conf或二进制快照）的耗时 */
+    public Histogram getSnapshotSave() { return snapshotSave; }
+
+    /** 加载配置文件的耗时 */
+    public Histogram getConfigLoad() { return configLoad; }
+
+    /** 重建内存封禁数据（/bt reload）的耗时 */
+    public Histogram getBanReload() { return banReload; }
+
+    /** 普通封禁布隆过滤器的命中情况 */
+    public FilterCounters getBanFilter() { return banFilter; }
+
+    /** 临时封禁布隆过滤器的命中情况 */
+    public FilterCounters getFakeBanFilter() { return fakeBanFilter; }
+
+    /**
+     * 注册一个瞬时值，同名覆盖
+     */
+    public void registerGauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public long getGauge(String name) {
+        LongSupplier supplier = gauges.get(name);
+        return supplier == null ? 0 : supplier.getAsLong();
+    }
+
+    /**
+     * 当前所有瞬时值（按注册顺序）
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        synchronized (gauges) {
+            gauges.forEach((name, supplier) -> values.put(name, supplier.getAsLong()));
+        }
+        return values;
+    }
+
+    /**
+     * 布隆过滤器的计数：直接判定未封禁（跳过查表）的次数，以及判定可能封禁但查表未命中（误判）的次数
+     */
+    public static final class FilterCounters {
+        private final LongAdder negatives = new LongAdder();
+        private final LongAdder falsePositives = new LongAdder();
+
+        FilterCounters() {
+        }
+
+        public void recordNegative() { negatives.increment(); }
+
+        public void recordFalsePositive() { falsePositives.increment(); }
+
+        public long getNegatives() { return negatives.sum(); }
+
+        public long getFalsePositives() { return falsePositives.sum(); }
+    }
+
+    /**
+     * 以2的幂为桶边界的耗时直方图（纳秒），第i个桶记录 [2^(i-1), 2^i) 范围内的值
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        /**
+         * 从start（System.nanoTime()）到现在的耗时
+         */
+        public void recordSince(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        public long getCount() { return count.sum(); }
+
+        public long getSum() { return sum.sum(); }
+
+        public long getMax() { return max.get(); }
+
+        public long getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / n;
+        }
+
+        /**
+         * 分位数估计值（所在桶的上界，纳秒），没有数据时为0
+         */
+        public long getPercentile(double quantile) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets[i].sum();
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank && snapshot[i] > 0) {
+                    return Math.min(upperBound(i), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        /**
+         * 各个桶的计数，下标含义见类说明
+         */
+        public long[] getBuckets() {
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets[i].sum();
+            }
+            return snapshot;
+        }
+
+        /**
+         * 第i个桶的上界（不含）
+         */
+        public static long upperBound(int bucket) {
+            return bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+        }
+    }
+}
@@ -5,12 +5,15 @@ import com.velocitypowered.api.command.CommandManager;
 import com.velocitypowered.api.command.CommandMeta;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
 import org.slf4j.Logger;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 @Plugin(
         id = "bantools",
@@ -24,8 +27,16 @@ public class BanToolsPlugin {
     @Inject @DataDirectory private Path dataDirectory;
     private ConfigManager configManager;
     private WhitelistManager whitelistManager;
+    private ExpiryScheduler expiryScheduler;
     private BanManager banManager;
     private FakeBanManager fakeBanManager;
+    private BanImporter banImporter;
+    private BanExporter banExporter;
+    private LoginListener loginListener;
+    private OnlinePlayers onlinePlayers;
+    private MetricsHttpServer metricsHttpServer;
+    private BanSync banSync;
+    private ConfigReloader configReloader;
 
     @Subscribe
     public void onProxyInitialization(ProxyInitializeEvent event) {
@@ -35,33 +46,106 @@ public class BanToolsPlugin {
         // 初始化白名单管理器
         whitelistManager = new WhitelistManager(configManager, logger);
 
+        // 初始化到期调度器（封禁与临时封禁共用）
+        expiryScheduler = new ExpiryScheduler(logger);
+
         // 初始化封禁管理器
-        banManager = new BanManager(server, logger, configManager, whitelistManager);
+        banManager = new BanManager(server, logger, configManager, whitelistManager, expiryScheduler);
 
         // 初始化临时封禁管理器
-        fakeBanManager = new FakeBanManager(configManager, whitelistManager, server, logger);
+        fakeBanManager = new FakeBanManager(configManager, whitelistManager, server, logger, expiryScheduler);
 
         // 设置循环依赖
         banManager.setFakeBanManager(fakeBanManager);
 
+        // 初始化批量导入与导出
+        banImporter = new BanImporter(banManager, configManager, whitelistManager, logger);
+        banExporter = new BanExporter(configManager, logger);
+
         // 注册事件监听器
-        server.getEventManager().register(this, new LoginListener(banManager));
+        loginListener = new LoginListener(banManager, configManager);
+        server.getEventManager().register(this, loginListener);
+        onlinePlayers = new OnlinePlayers(server);
+        server.getEventManager().register(this, onlinePlayers);
+
+        // 配置文件热重载（/bt reload 同样使用）
+        configReloader = new ConfigReloader(configManager, banManager, fakeBanManager, whitelistManager, logger);
+        if (configManager.isConfigWatchEnabled()) {
+            configReloader.startWatching();
+        }
 
         // 注册命令
         registerCommands();
 
+        // 启动多代理封禁同步（可选）
+        if (configManager.isSyncEnabled()) {
+            Path syncDirectory = Paths.get(configManager.getSyncDirectory());
+            if (Files.isDirectory(syncDirectory)) {
+                banSync = new BanSync(banManager, fakeBanManager, logger, syncDirectory,
+                        configManager.getDataDirectory(), configManager.getSyncProxyId());
+                configManager.setSync(banSync);
+                banSync.start(configManager.getSyncPollIntervalMillis());
+            } else {
+                logger.error("同步目录不存在，未启用封禁同步: " + syncDirectory.toAbsolutePath());
+            }
+        }
+
+        // 启动统计接口（可选）
+        if (configManager.isMetricsEndpointEnabled()) {
+            metricsHttpServer = new MetricsHttpServer(configManager.getMetrics(), logger);
+            metricsHttpServer.start(configManager.getMetricsEndpointHost(), configManager.getMetricsEndpointPort());
+        }
+
         logger.info("===================================");
         logger.info("BanTools v1.4.0 已加载");
         logger.info("作者：NSrank & Qwen2.5-Max & Augment");
         logger.info("===================================");
     }
 
+    @Subscribe
+    public void onProxyShutdown(ProxyShutdownEvent event) {
+        // 先停止读取同步日志；本地的最后一批修改仍会在下面的写盘中追加到共享日志
+        if (banSync != null) {
+            banSync.shutdown();
+        }
+        if (configReloader != null) {
+            configReloader.shutdown();
+        }
+        if (metricsHttpServer != null) {
+            metricsHttpServer.stop();
+        }
+        if (loginListener != null) {
+            loginListener.shutdown();
+        }
+        if (fakeBanManager != null) {
+            fakeBanManager.shutdown();
+        }
+        if (banImporter != null) {
+            banImporter.shutdown();
+        }
+        if (banExporter != null) {
+            banExporter.shutdown();
+        }
+        if (expiryScheduler != null) {
+            expiryScheduler.shutdown();
+        }
+        // 最后关闭封禁管理器，确保排队中的写入全部完成
+        if (banManager != null) {
+            banManager.shutdown();
+        }
+        // 强制写入写回模式下尚未落盘的修改
+        if (configManager != null) {
+            configManager.shutdown();
+        }
+    }
+
     private void registerCommands() {
         CommandManager commandManager = server.getCommandManager();
 
         CommandMeta meta = commandManager.metaBuilder("bantools")
                 .aliases("bt")
                 .build();
-        commandManager.register(meta, new BanToolsCommand(banManager, configManager, fakeBanManager, server));
+        commandManager.register(meta, new BanToolsCommand(banManager, configManager, fakeBanManager, server,
+                banImporter, banExporter, onlinePlayers, configReloader));
     }
 }
\ No newline at end of file
@@ -3,18 +3,95 @@ package org.plugin.bantools;
 import com.typesafe.config.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
 
 public class ConfigManager {
-    private Config config;
+    private static final long DEFAULT_FLUSH_DELAY_MS = 2000;
+    private static final long DEFAULT_COMPACT_THRESHOLD_KB = 1024;
+    private static final String DEFAULT_METRICS_HOST = "127.0.0.1";
+    private static final int DEFAULT_METRICS_PORT = 9225;
+    private static final int DEFAULT_FILTER_EXPECTED_ENTRIES = 10000;
+    private static final double DEFAULT_FILTER_FPP = 0.01;
+    private static final long DEFAULT_SYNC_POLL_INTERVAL_MS = 1000;
+    private static final long DEFAULT_RELOAD_DEBOUNCE_MS = 500;
+
+    private volatile Config config;
     private final File configFile;
-    private final Map<String, BanEntry> bans = new HashMap<>();
-    private final Map<String, FakeBanEntry> fakeBans = new HashMap<>();
+    // 上次加载或写入的config.conf内容的校验值，用于忽略插件自己写文件引起的变化通知
+    private volatile long configChecksum;
+    // 内存中的封禁表是数据的权威来源，写入配置文件只是它的持久化副本
+    // 使用并发容器，getBans/getFakeBans可以直接返回只读视图而不必在锁内复制整张表
+    private final Map<String, BanEntry> bans = new ConcurrentHashMap<>();
+    private final Map<String, FakeBanEntry> fakeBans = new ConcurrentHashMap<>();
+    private final Map<String, BanEntry> banView = Collections.unmodifiableMap(bans);
+    private final Map<String, FakeBanEntry> fakeBanView = Collections.unmodifiableMap(fakeBans);
+    // 小写玩家名 -> bans中的记录名，用于忽略大小写的按名查找
+    private final Map<String, String> banKeys = new ConcurrentHashMap<>();
+    // 小写玩家名 -> fakeBans中的记录名；同一玩家只保留一条临时封禁记录，沿用最先出现的大小写
+    private final Map<String, String> fakeBanKeys = new ConcurrentHashMap<>();
+    // 封禁历史的二级索引（开始时间、玩家名前缀、原因关键词），首次查询时才建立（建立时需要解码每条记录，
+    // 加载时建立会抵消二进制快照的延迟解码）；为null时修改不必维护索引，重新加载时重置为null
+    private volatile BanHistory history;
+
+    // 写回（write-behind）相关状态：修改立即进入内存并标记为脏，由后台线程合并写盘
+    private final Object writeLock = new Object();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "BanTools-ConfigFlusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<String> dirtyBans = new LinkedHashSet<>();
+    private final Set<String> dirtyFakeBans = new LinkedHashSet<>();
+    private boolean snapshotRequired;
+    private ScheduledFuture<?> pendingFlush;
+
+    // 变更日志：修改只追加单条记录，超过阈值后再合并为完整快照（即config.conf）
+    private final BanJournal journal;
+    private long journalGeneration;
+    // 可选的二进制快照：启用后封禁表存放在bans-<代号>.dat中，config.conf只保存设置
+    private final BanSnapshotFile snapshotFile;
+    // 持久化后端，首次加载配置时按storage.type选择，运行期间不切换
+    private BanStore store;
+    // 多代理同步（可选）：本地修改过的记录名，写盘时一并追加到共享日志；其他代理同步来的修改不会记入
+    private volatile BanSync sync;
+    private final Set<String> syncBans = new LinkedHashSet<>();
+    private final Set<String> syncFakeBans = new LinkedHashSet<>();
+    private final BanToolsMetrics metrics = new BanToolsMetrics();
 
     public ConfigManager() {
-        configFile = new File("plugins/BanTools/config.conf");
+        this(new File("plugins/BanTools/config.conf"));
+    }
+
+    /**
+     * 使用指定的配置文件，变更日志和二进制快照放在同一目录
+     */
+    public ConfigManager(File configFile) {
+        this.configFile = configFile;
+        journal = new BanJournal(configFile.toPath().resolveSibling("bans.journal"));
+        snapshotFile = new BanSnapshotFile(configFile.getAbsoluteFile().getParentFile().toPath());
+        metrics.registerGauge("journal_bytes", journal::size);
         loadConfig();
     }
 
@@ -22,16 +99,24 @@ public class ConfigManager {
         if (!configFile.exists()) {
             createDefaultConfig();
         }
+        long start = System.nanoTime();
         try {
-            config = ConfigFactory.parseFile(configFile);
-            loadBans();
-            loadFakeBans();
+            byte[] content = Files.readAllBytes(configFile.toPath());
+            config = ConfigFactory.parseString(new String(content, StandardCharsets.UTF_8));
+            configChecksum = checksum(content);
+            loadStore();
+            if (snapshotRequired) {
+                markDirty();
+            }
+            metrics.getConfigLoad().recordSince(start);
         } catch (Exception e) {
             System.err.println("配置文件解析失败，尝试修复...");
             e.printStackTrace();
             // 如果配置文件损坏，备份并重新创建
             backupAndRecreateConfig();
         }
+        rebuildBanKeys();
+        history = null;
     }
 
     private void createDefaultConfig() {
@@ -54,6 +139,43 @@ public class ConfigManager {
                 "  protection_message = \"该玩家受到白名单保护，无法执行此操作！\"\n" +
                 "}\n" +
                 "\n" +
+                "storage {\n" +
+                "  write_behind = true\n" +
+                "  flush_delay_ms = 2000\n" +
+                "  journal = true\n" +
+                "  compact_threshold_kb = 1024\n" +
+                "  binary_snapshot = false\n" +
+                "  type = \"hocon\"\n" +
+                "}\n" +
+                "\n" +
+                "metrics {\n" +
+                "  enabled = false\n" +
+                "  host = \"127.0.0.1\"\n" +
+                "  port = 9225\n" +
+                "}\n" +
+                "\n" +
+                "filter {\n" +
+                "  enabled = true\n" +
+                "  expected_entries = 10000\n" +
+                "  false_positive_rate = 0.01\n" +
+                "}\n" +
+                "\n" +
+                "login {\n" +
+                "  prelogin_check = true\n" +
+                "}\n" +
+                "\n" +
+                "sync {\n" +
+                "  enabled = false\n" +
+                "  directory = \"\"\n" +
+                "  proxy_id = \"\"\n" +
+                "  poll_interval_ms = 1000\n" +
+                "}\n" +
+                "\n" +
+                "reload {\n" +
+                "  watch = true\n" +
+                "  debounce_ms = 500\n" +
+                "}\n" +
+                "\n" +
                 "bans = {}\n" +
                 "fakebans = {}";
         try {
@@ -75,20 +197,104 @@ public class ConfigManager {
             // 重新创建默认配置
             createDefaultConfig();
             config = ConfigFactory.parseFile(configFile);
-            loadBans();
+            // 与正常加载一样打开持久化后端，否则之后的修改都无法写盘
+            loadStore();
 
         } catch (Exception e) {
             System.err.println("修复配置文件失败: " + e.getMessage());
             e.printStackTrace();
         }
+        if (store == null) {
+            store = new HoconStore();
+        }
     }
 
+    /**
+     * 运行时统计，各个管理器共用
+     */
+    public BanToolsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 所有封禁记录（包括已解封的）的只读视图，不复制数据
+     * 视图随内存数据实时变化，遍历时弱一致：不会抛出ConcurrentModificationException，但可能看到遍历期间的修改
+     */
     public Map<String, BanEntry> getBans() {
-        return new HashMap<>(bans);
+        return banView;
     }
 
+    /**
+     * 所有临时封禁记录的只读视图，不复制数据，遍历时弱一致
+     */
     public Map<String, FakeBanEntry> getFakeBans() {
-        return new HashMap<>(fakeBans);
+        return fakeBanView;
+    }
+
+    /**
+     * 按玩家名查找封禁记录（忽略大小写，包括已解封的），不存在时返回null
+     */
+    public BanEntry findBan(String name) {
+        if (name == null) {
+            return null;
+        }
+        BanEntry entry = bans.get(name);
+        if (entry != null) {
+            return entry;
+        }
+        String key = banKeys.get(name.toLowerCase(Locale.ROOT));
+        return key == null ? null : bans.get(key);
+    }
+
+    /**
+     * 按玩家名查找临时封禁记录（忽略大小写，包括已解除的），不存在时返回null
+     */
+    FakeBanEntry findFakeBan(String name) {
+        if (name == null) {
+            return null;
+        }
+        FakeBanEntry entry = fakeBans.get(name);
+        if (entry != null) {
+            return entry;
+        }
+        String key = fakeBanKeys.get(name.toLowerCase(Locale.ROOT));
+        return key == null ? null : fakeBans.get(key);
+    }
+
+    /**
+     * 封禁历史索引，用于 /bt history 分页查询；首次调用时在对象锁内建立，建立期间的修改等待建立完成
+     */
+    BanHistory getHistory() {
+        BanHistory current = history;
+        if (current == null) {
+            synchronized (this) {
+                current = history;
+                if (current == null) {
+                    current = BanHistory.of(bans.values());
+                    history = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 记录被替换或新增后更新历史索引（须在对象锁内调用）
+     * @param previous 被替换的记录，没有时为null
+     */
+    private void updateHistory(BanEntry previous, BanEntry entry) {
+        if (history != null) {
+            history.replace(previous, entry);
+        }
+    }
+
+    /**
+     * 记录被删除后移出历史索引（须在对象锁内调用）
+     */
+    private void removeFromHistory(BanEntry entry) {
+        if (history != null) {
+            history.remove(entry);
+        }
     }
 
     public String getDefaultBanReason() {
@@ -127,25 +333,471 @@ public class ConfigManager {
         return config.getString("whitelist.protection_message");
     }
 
+    /**
+     * 是否启用写回模式（旧配置文件没有storage节时默认启用）
+     */
+    public boolean isWriteBehindEnabled() {
+        return !config.hasPath("storage.write_behind") || config.getBoolean("storage.write_behind");
+    }
+
+    /**
+     * 写回模式下修改最多延迟多久写入磁盘（毫秒）
+     */
+    public long getFlushDelayMillis() {
+        return config.hasPath("storage.flush_delay_ms") ? config.getLong("storage.flush_delay_ms") : DEFAULT_FLUSH_DELAY_MS;
+    }
+
+    /**
+     * 是否启用变更日志（旧配置文件没有该项时默认启用）
+     */
+    public boolean isJournalEnabled() {
+        return !config.hasPath("storage.journal") || config.getBoolean("storage.journal");
+    }
+
+    /**
+     * 是否使用二进制快照保存封禁表（默认关闭）
+     */
+    public boolean isBinarySnapshotEnabled() {
+        return config.hasPath("storage.binary_snapshot") && config.getBoolean("storage.binary_snapshot");
+    }
+
+    /**
+     * 持久化后端：hocon（config.conf，默认）或h2（嵌入式数据库）
+     */
+    public String getStorageType() {
+        return config.hasPath("storage.type") ? config.getString("storage.type").toLowerCase(Locale.ROOT) : "hocon";
+    }
+
+    /**
+     * 变更日志超过该大小（KB）后合并为新的快照
+     */
+    public long getCompactThresholdBytes() {
+        long kb = config.hasPath("storage.compact_threshold_kb") ?
+                config.getLong("storage.compact_threshold_kb") : DEFAULT_COMPACT_THRESHOLD_KB;
+        return kb * 1024;
+    }
+
+    /**
+     * 是否启用Prometheus统计接口（默认关闭）
+     */
+    public boolean isMetricsEndpointEnabled() {
+        return config.hasPath("metrics.enabled") && config.getBoolean("metrics.enabled");
+    }
+
+    public String getMetricsEndpointHost() {
+        return config.hasPath("metrics.host") ? config.getString("metrics.host") : DEFAULT_METRICS_HOST;
+    }
+
+    public int getMetricsEndpointPort() {
+        return config.hasPath("metrics.port") ? config.getInt("metrics.port") : DEFAULT_METRICS_PORT;
+    }
+
+    /**
+     * 是否启用登录检查的布隆过滤器（旧配置文件没有该项时默认启用）
+     */
+    public boolean isFilterEnabled() {
+        return !config.hasPath("filter.enabled") || config.getBoolean("filter.enabled");
+    }
+
+    /**
+     * 布隆过滤器的最小容量（键数量），实际容量至少为当前记录键数的两倍
+     */
+    public int getFilterExpectedEntries() {
+        int entries = config.hasPath("filter.expected_entries") ?
+                config.getInt("filter.expected_entries") : DEFAULT_FILTER_EXPECTED_ENTRIES;
+        return Math.max(16, entries);
+    }
+
+    /**
+     * 布隆过滤器的目标误判率，限制在0.000001到0.5之间
+     */
+    public double getFilterFalsePositiveRate() {
+        double rate = config.hasPath("filter.false_positive_rate") ?
+                config.getDouble("filter.false_positive_rate") : DEFAULT_FILTER_FPP;
+        return Math.min(0.5, Math.max(0.000001, rate));
+    }
+
+    /**
+     * 是否在验证前（PreLoginEvent）按IP和玩家名预先拒绝被封禁的连接（旧配置文件没有该项时默认启用）
+     */
+    public boolean isPreLoginCheckEnabled() {
+        return !config.hasPath("login.prelogin_check") || config.getBoolean("login.prelogin_check");
+    }
+
+    /**
+     * 是否启用多代理封禁同步（默认关闭，需要同时配置共享目录）
+     */
+    public boolean isSyncEnabled() {
+        return config.hasPath("sync.enabled") && config.getBoolean("sync.enabled") && !getSyncDirectory().isEmpty();
+    }
+
+    /**
+     * 各代理共享的同步目录
+     */
+    public String getSyncDirectory() {
+        return config.hasPath("sync.directory") ? config.getString("sync.directory").trim() : "";
+    }
+
+    /**
+     * 本代理在同步日志中的ID，为空时每次启动随机生成
+     */
+    public String getSyncProxyId() {
+        return config.hasPath("sync.proxy_id") ? config.getString("sync.proxy_id") : "";
+    }
+
+    /**
+     * 读取共享日志的间隔（毫秒）
+     */
+    public long getSyncPollIntervalMillis() {
+        long interval = config.hasPath("sync.poll_interval_ms") ?
+                config.getLong("sync.poll_interval_ms") : DEFAULT_SYNC_POLL_INTERVAL_MS;
+        return Math.max(100, interval);
+    }
+
+    /**
+     * 是否监视config.conf并在外部修改后自动重新加载（旧配置文件没有该项时默认启用）
+     */
+    public boolean isConfigWatchEnabled() {
+        return !config.hasPath("reload.watch") || config.getBoolean("reload.watch");
+    }
+
+    /**
+     * 文件最后一次变化后等待多久再重新加载（毫秒），编辑器分多次写入时只加载一次
+     */
+    public long getReloadDebounceMillis() {
+        long delay = config.hasPath("reload.debounce_ms") ? config.getLong("reload.debounce_ms") : DEFAULT_RELOAD_DEBOUNCE_MS;
+        return Math.max(50, delay);
+    }
+
+    File getConfigFile() {
+        return configFile;
+    }
+
+    private static long checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return crc.getValue() ^ ((long) content.length << 32);
+    }
+
+    /**
+     * 配置文件所在目录（变更日志、快照、数据库和同步进度都放在这里）
+     */
+    Path getDataDirectory() {
+        return configFile.getAbsoluteFile().getParentFile().toPath();
+    }
+
+    /**
+     * 把命令中给出的文件名解析为插件目录下的文件（@file: 目标、导入和导出使用）
+     * 规范化后不在插件目录内的路径（绝对路径、..、指向目录外的符号链接）一律拒绝，
+     * 避免有命令权限的人借此读写服务器上的任意文件
+     * @return 不在插件目录内时返回null
+     */
+    Path resolveDataFile(String fileName) {
+        Path base = getDataDirectory().normalize();
+        Path file;
+        try {
+            file = base.resolve(fileName).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (!file.startsWith(base) || file.equals(base)) {
+            return null;
+        }
+        try {
+            if (Files.exists(file) && !file.toRealPath().startsWith(base.toRealPath())) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * 启用多代理同步后由插件主类设置
+     */
+    void setSync(BanSync sync) {
+        this.sync = sync;
+    }
+
     public void addBan(BanEntry entry) {
-        Config updatedConfig = config.withValue("bans." + entry.getName(),
-                ConfigValueFactory.fromMap(entryToMap(entry)));
-        saveConfig(updatedConfig);
-        loadBans(); // 重新加载封禁数据到内存
+        synchronized (this) {
+            updateHistory(bans.put(entry.getName(), entry), entry);
+            banKeys.put(entry.getName().toLowerCase(Locale.ROOT), entry.getName());
+            banChanged(entry.getName());
+        }
+        markDirty();
+    }
+
+    /**
+     * 批量加入封禁记录，所有记录在同一次写盘中持久化（批量封禁使用），同名记录被替换
+     */
+    public void addBans(Collection<BanEntry> entries) {
+        synchronized (this) {
+            for (BanEntry entry : entries) {
+                updateHistory(bans.put(entry.getName(), entry), entry);
+                banKeys.put(entry.getName().toLowerCase(Locale.ROOT), entry.getName());
+                banChanged(entry.getName());
+            }
+        }
+        markDirty();
+    }
+
+    /**
+     * 批量加入封禁记录，已有同名记录（忽略大小写）的跳过，在同一次写盘中持久化（导入使用）
+     * @return 实际加入的记录
+     */
+    List<BanEntry> addNewBans(Collection<BanEntry> entries) {
+        List<BanEntry> added = new ArrayList<>(entries.size());
+        synchronized (this) {
+            for (BanEntry entry : entries) {
+                if (findBan(entry.getName()) != null) {
+                    continue;
+                }
+                updateHistory(bans.put(entry.getName(), entry), entry);
+                banKeys.put(entry.getName().toLowerCase(Locale.ROOT), entry.getName());
+                banChanged(entry.getName());
+                added.add(entry);
+            }
+        }
+        if (!added.isEmpty()) {
+            markDirty();
+        }
+        return added;
     }
 
     public void setBanState(String target, boolean state) {
-        Config updatedConfig = config.withValue("bans." + target + ".state",
-                ConfigValueFactory.fromAnyRef(state));
-        saveConfig(updatedConfig);
-        loadBans(); // 重新加载封禁数据到内存
+        synchronized (this) {
+            BanEntry entry = findBan(target);
+            if (entry == null) {
+                return;
+            }
+            replaceState(entry, state);
+        }
+        markDirty();
+    }
+
+    /**
+     * 批量修改封禁状态，所有修改合并为一次持久化
+     */
+    public void setBanStates(Collection<String> targets, boolean state) {
+        synchronized (this) {
+            for (String target : targets) {
+                BanEntry entry = findBan(target);
+                if (entry != null) {
+                    replaceState(entry, state);
+                }
+            }
+        }
+        markDirty();
+    }
+
+    /**
+     * 用修改了状态的副本替换记录（调用方需持有对象锁）；原记录可能仍在BanManager的快照中，不能原地修改
+     */
+    private void replaceState(BanEntry entry, boolean state) {
+        BanEntry updated = entry.copy();
+        updated.setState(state);
+        bans.put(updated.getName(), updated);
+        updateHistory(entry, updated);
+        banChanged(updated.getName());
+    }
+
+    /**
+     * 用修改后的副本替换记录
+     * @param previous 被替换的记录；表中的同名记录已不是它（期间被解封或重新封禁）时不替换
+     */
+    public void updateBanEntry(BanEntry previous, BanEntry entry) {
+        synchronized (this) {
+            if (bans.get(previous.getName()) != previous) {
+                return;
+            }
+            updateHistory(bans.put(entry.getName(), entry), entry);
+            banChanged(entry.getName());
+        }
+        markDirty();
+    }
+
+    /**
+     * 写入其他代理同步来的封禁记录（整条替换同名记录并持久化，不会再同步出去）
+     * 同名记录与其他查找一样忽略大小写，替换时沿用本地记录的记录名
+     * @return 本地同名记录的开始时间更晚（同步来的是过时的修改）时返回false，记录被忽略
+     */
+    boolean putSyncedBan(BanEntry entry) {
+        synchronized (this) {
+            BanEntry current = findBan(entry.getName());
+            if (current != null && current.getStartTime() > entry.getStartTime()) {
+                return false;
+            }
+            if (current != null) {
+                entry.setName(current.getName());
+            }
+            updateHistory(bans.put(entry.getName(), entry), entry);
+            banKeys.put(entry.getName().toLowerCase(Locale.ROOT), entry.getName());
+            dirtyBans.add(entry.getName());
+        }
+        markDirty();
+        return true;
+    }
+
+    /**
+     * 写入其他代理同步来的临时封禁记录，规则同putSyncedBan
+     */
+    boolean putSyncedFakeBan(FakeBanEntry entry) {
+        synchronized (this) {
+            FakeBanEntry current = findFakeBan(entry.getName());
+            if (current != null && current.getStartTime() > entry.getStartTime()) {
+                return false;
+            }
+            putFakeBan(entry);
+            dirtyFakeBans.add(entry.getName());
+        }
+        markDirty();
+        return true;
+    }
+
+    /**
+     * 外部修改config.conf后重新加载时，封禁表中发生变化的记录
+     */
+    static final class TableChanges {
+        // 新增或修改的记录（已替换内存中的同名记录）
+        final List<BanEntry> bans = new ArrayList<>();
+        final List<FakeBanEntry> fakeBans = new ArrayList<>();
+        // 从文件中删除的记录名（已从内存中移除）
+        final List<String> removedBans = new ArrayList<>();
+        final List<String> removedFakeBans = new ArrayList<>();
+
+        boolean isEmpty() {
+            return bans.isEmpty() && fakeBans.isEmpty() && removedBans.isEmpty() && removedFakeBans.isEmpty();
+        }
+
+        int size() {
+            return bans.size() + fakeBans.size() + removedBans.size() + removedFakeBans.size();
+        }
+    }
+
+    /**
+     * 应用外部对config.conf的修改：设置整体替换为新文件的内容，封禁表只应用与上次加载（或写入）的文件相比有变化的记录
+     * 比较的基准是上次的文件内容而不是内存：启用变更日志时文件中的封禁表可能落后于内存，未改动的记录不能覆盖内存中更新的状态
+     * 读取文件、按内容校验值判断是否变化、解析和比较都在写盘锁内完成，插件自己的写盘不会插在读取与比较之间
+     * @return 封禁表中变化的记录；文件内容与上次加载（或写入）的相同时返回null
+     * @throws IOException 读取文件失败
+     * @throws ConfigException 文件解析失败（当前配置保持不变）
+     */
+    TableChanges applyExternalEdit() throws IOException {
+        TableChanges changes = new TableChanges();
+        boolean cleanTables;
+        synchronized (writeLock) {
+            byte[] content = Files.readAllBytes(configFile.toPath());
+            if (checksum(content) == configChecksum) {
+                return null;
+            }
+            Config parsed = ConfigFactory.parseString(new String(content, StandardCharsets.UTF_8));
+            if (detectFlattenedConfig(parsed)) {
+                throw new ConfigException.Generic("封禁记录的格式不正确（键被扁平化），请检查bans节的括号");
+            }
+            synchronized (this) {
+                ConfigObject previousBans = tableOf(config, "bans");
+                ConfigObject updatedBans = tableOf(parsed, "bans");
+                for (Map.Entry<String, ConfigValue> entry : updatedBans.entrySet()) {
+                    if (entry.getValue().equals(previousBans.get(entry.getKey())) ||
+                            !(entry.getValue() instanceof ConfigObject)) {
+                        continue;
+                    }
+                    BanEntry banEntry = parseBan(entry.getKey(), (ConfigObject) entry.getValue());
+                    if (banEntry != null) {
+                        updateHistory(bans.put(banEntry.getName(), banEntry), banEntry);
+                        banKeys.put(banEntry.getName().toLowerCase(Locale.ROOT), banEntry.getName());
+                        banChanged(banEntry.getName());
+                        changes.bans.add(banEntry);
+                    }
+                }
+                for (String name : previousBans.keySet()) {
+                    if (updatedBans.containsKey(name)) {
+                        continue;
+                    }
+                    BanEntry removed = bans.remove(name);
+                    if (removed != null) {
+                        removeFromHistory(removed);
+                        banKeys.remove(name.toLowerCase(Locale.ROOT), name);
+                        changes.removedBans.add(name);
+                    }
+                }
+
+                ConfigObject previousFakeBans = tableOf(config, "fakebans");
+                ConfigObject updatedFakeBans = tableOf(parsed, "fakebans");
+                for (Map.Entry<String, ConfigValue> entry : updatedFakeBans.entrySet()) {
+                    if (entry.getValue().equals(previousFakeBans.get(entry.getKey())) ||
+                            !(entry.getValue() instanceof ConfigObject)) {
+                        continue;
+                    }
+                    FakeBanEntry fakeBanEntry = parseFakeBan(entry.getKey(), (ConfigObject) entry.getValue());
+                    fakeBans.put(fakeBanEntry.getName(), fakeBanEntry);
+                    fakeBanKeys.putIfAbsent(fakeBanEntry.getName().toLowerCase(Locale.ROOT), fakeBanEntry.getName());
+                    fakeBanChanged(fakeBanEntry.getName());
+                    changes.fakeBans.add(fakeBanEntry);
+                }
+                for (String name : previousFakeBans.keySet()) {
+                    if (!updatedFakeBans.containsKey(name) && fakeBans.remove(name) != null) {
+                        fakeBanKeys.remove(name.toLowerCase(Locale.ROOT), name);
+                        changes.removedFakeBans.add(name);
+                    }
+                }
+
+                // 删除的记录可能还在变更日志或数据库中，写入完整快照后才不会在重启时恢复
+                if (!changes.removedBans.isEmpty() || !changes.removedFakeBans.isEmpty()) {
+                    snapshotRequired = true;
+                }
+                config = parsed;
+                configChecksum = checksum(content);
+                // 数据库后端不读取config.conf中的封禁表，应用后清空，避免重启时被当作残留数据再次导入
+                cleanTables = !(store instanceof HoconStore) && (!updatedBans.isEmpty() || !updatedFakeBans.isEmpty());
+            }
+            if (cleanTables) {
+                saveConfig(parsed
+                        .withValue("bans", ConfigValueFactory.fromMap(new HashMap<>()))
+                        .withValue("fakebans", ConfigValueFactory.fromMap(new HashMap<>())));
+            }
+        }
+        if (!changes.isEmpty()) {
+            markDirty();
+        }
+        return changes;
+    }
+
+    private static ConfigObject tableOf(Config source, String path) {
+        try {
+            return source.hasPath(path) ? source.getObject(path) : ConfigFactory.empty().root();
+        } catch (ConfigException e) {
+            return ConfigFactory.empty().root();
+        }
     }
 
-    public void updateBanEntry(BanEntry entry) {
-        Config updatedConfig = config.withValue("bans." + entry.getName(),
-                ConfigValueFactory.fromMap(entryToMap(entry)));
-        saveConfig(updatedConfig);
-        loadBans(); // 重新加载封禁数据到内存
+    /**
+     * 记录本地修改（调用方需持有对象锁）：加入脏集合，启用同步时同时加入待同步集合
+     */
+    private void banChanged(String name) {
+        dirtyBans.add(name);
+        if (sync != null) {
+            syncBans.add(name);
+        }
+    }
+
+    private void fakeBanChanged(String name) {
+        dirtyFakeBans.add(name);
+        if (sync != null) {
+            syncFakeBans.add(name);
+        }
+    }
+
+    /**
+     * 加载完成后重建小写玩家名索引
+     */
+    private void rebuildBanKeys() {
+        banKeys.clear();
+        bans.keySet().forEach(key -> banKeys.put(key.toLowerCase(Locale.ROOT), key));
+        fakeBanKeys.clear();
+        fakeBans.keySet().forEach(key -> fakeBanKeys.putIfAbsent(key.toLowerCase(Locale.ROOT), key));
     }
 
     private Map<String, Object> entryToMap(BanEntry entry) {
@@ -160,22 +812,444 @@ public class ConfigManager {
         return map;
     }
 
-    private void saveConfig(Config updatedConfig) {
+    /**
+     * 标记内存数据已修改：写回模式下安排一次延迟写盘（已安排则合并），否则立即写盘
+     * 调用前需先在对象锁内把修改的记录名加入脏集合
+     */
+    private void markDirty() {
+        synchronized (this) {
+            if (isWriteBehindEnabled()) {
+                if (pendingFlush == null || pendingFlush.isDone()) {
+                    pendingFlush = flusher.schedule(this::flush, getFlushDelayMillis(), TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+        // 未启用写回时立即写盘（此时不能持有对象锁，否则与flush的加锁顺序相反）
+        flush();
+    }
+
+    /**
+     * 将内存中的修改交给持久化后端
+     * 平时只写入修改过的记录；需要完整快照时（启动合并、上次写入失败、关闭）写入全部记录
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            List<BanEntry> banList = new ArrayList<>();
+            List<FakeBanEntry> fakeBanList = new ArrayList<>();
+            List<String> syncRecords = new ArrayList<>();
+            boolean full;
+            synchronized (this) {
+                if (dirtyBans.isEmpty() && dirtyFakeBans.isEmpty() && !snapshotRequired) {
+                    return;
+                }
+                full = snapshotRequired;
+                if (full) {
+                    banList.addAll(bans.values());
+                    fakeBanList.addAll(fakeBans.values());
+                } else {
+                    for (String name : dirtyBans) {
+                        BanEntry entry = bans.get(name);
+                        if (entry != null) {
+                            banList.add(entry);
+                        }
+                    }
+                    for (String name : dirtyFakeBans) {
+                        FakeBanEntry entry = fakeBans.get(name);
+                        if (entry != null) {
+                            fakeBanList.add(entry);
+                        }
+                    }
+                }
+                dirtyBans.clear();
+                dirtyFakeBans.clear();
+                snapshotRequired = false;
+                // 记录按当前状态编码，之后的修改会在下次写盘时再同步
+                for (String name : syncBans) {
+                    BanEntry entry = bans.get(name);
+                    if (entry != null) {
+                        syncRecords.add(BanJournal.encode(entry));
+                    }
+                }
+                for (String name : syncFakeBans) {
+                    FakeBanEntry entry = fakeBans.get(name);
+                    if (entry != null) {
+                        syncRecords.add(BanJournal.encode(entry));
+                    }
+                }
+                syncBans.clear();
+                syncFakeBans.clear();
+            }
+
+            try {
+                if (store == null) {
+                    throw new IllegalStateException("持久化后端未初始化");
+                }
+                if (full) {
+                    store.writeAll(banList, fakeBanList);
+                } else {
+                    store.write(banList, fakeBanList);
+                }
+            } catch (Exception e) {
+                System.err.println("保存封禁数据失败，将在下次写盘时重试: " + e);
+                e.printStackTrace();
+                synchronized (this) {
+                    if (full) {
+                        snapshotRequired = true;
+                    } else {
+                        banList.forEach(entry -> dirtyBans.add(entry.getName()));
+                        fakeBanList.forEach(entry -> dirtyFakeBans.add(entry.getName()));
+                    }
+                }
+            }
+
+            BanSync currentSync = sync;
+            if (currentSync != null && !syncRecords.isEmpty()) {
+                currentSync.publish(syncRecords);
+            }
+        }
+    }
+
+    /**
+     * 立即写入完整快照（不等待变更日志达到阈值）
+     */
+    void writeSnapshot() {
+        synchronized (this) {
+            snapshotRequired = true;
+        }
+        flush();
+    }
+
+    /**
+     * 将全部封禁数据写成新的快照，并清空变更日志
+     * 默认写入config.conf；启用二进制快照时封禁表写入新的bans-<代号>.dat，config.conf中的封禁表清空
+     * 快照带有新的代号，即使清空日志前崩溃，旧日志也会因代号不一致而被忽略
+     */
+    private void compact(List<BanEntry> banList, List<FakeBanEntry> fakeBanList) throws IOException {
+        synchronized (writeLock) {
+            long start = System.nanoTime();
+            Config updatedConfig;
+            long generation = journalGeneration + 1;
+            boolean binary = isBinarySnapshotEnabled();
+            synchronized (this) {
+                if (binary) {
+                    updatedConfig = config
+                            .withValue("bans", ConfigValueFactory.fromMap(new HashMap<>()))
+                            .withValue("fakebans", ConfigValueFactory.fromMap(new HashMap<>()));
+                } else {
+                    updatedConfig = config
+                            .withValue("bans", ConfigValueFactory.fromMap(tableToMap(banList, BanEntry::getName, this::entryToMap)))
+                            .withValue("fakebans", ConfigValueFactory.fromMap(tableToMap(fakeBanList, FakeBanEntry::getName, this::fakeBanEntryToMap)));
+                }
+                updatedConfig = updatedConfig.withValue("journal_generation", ConfigValueFactory.fromAnyRef(generation));
+            }
+            if (binary) {
+                // 先写二进制快照再写config.conf，中途崩溃时较旧的config.conf不会覆盖快照
+                snapshotFile.write(generation, banList, fakeBanList);
+            }
+            if (!saveConfig(updatedConfig)) {
+                // 快照写入失败时保留变更日志，下次写盘时重试
+                throw new IOException("写入config.conf失败");
+            }
+            journalGeneration = generation;
+            if (isJournalEnabled() || journal.size() > 0) {
+                try {
+                    journal.reset(generation);
+                } catch (Exception e) {
+                    System.err.println("重置变更日志失败: " + e.getMessage());
+                }
+            }
+            // 未启用二进制快照时，所有.dat文件都已过时
+            snapshotFile.deleteOlderThan(binary ? generation : Long.MAX_VALUE);
+            metrics.getSnapshotSave().recordSince(start);
+        }
+    }
+
+    /**
+     * 按storage.type打开持久化后端（仅首次加载时）并加载封禁表
+     */
+    private void loadStore() throws Exception {
+        if (store == null) {
+            store = openStore();
+        }
+        bans.clear();
+        fakeBans.clear();
+        try {
+            store.load(bans, fakeBans);
+        } catch (Exception e) {
+            if (store instanceof HoconStore) {
+                throw e;
+            }
+            // 数据库无法读取时不能当作配置文件损坏处理，改用config.conf中的数据继续运行
+            System.err.println("读取" + getStorageType() + "数据库失败，本次改用config.conf中的封禁数据: " + e.getMessage());
+            store.close();
+            store = new HoconStore();
+            bans.clear();
+            fakeBans.clear();
+            store.load(bans, fakeBans);
+            return;
+        }
+        if (!(store instanceof HoconStore)) {
+            importHoconTables();
+        }
+    }
+
+    private BanStore openStore() {
+        String type = getStorageType();
+        if (type.equals("h2")) {
+            Path file = getDataDirectory().resolve("bans");
+            try {
+                BanStore h2 = H2BanStore.open(file, metrics);
+                System.out.println("使用H2数据库存储封禁数据: " + file + ".mv.db");
+                return h2;
+            } catch (Exception e) {
+                System.err.println("无法打开H2数据库，改用config.conf存储封禁数据: " + e);
+            }
+        } else if (!type.equals("hocon")) {
+            System.err.println("未知的存储类型: " + type + "，改用config.conf存储封禁数据");
+        }
+        return new HoconStore();
+    }
+
+    /**
+     * 使用数据库后端时，把config.conf、二进制快照和变更日志中残留的封禁数据合并进数据库（以残留数据为准），
+     * 成功后清空它们：首次从hocon切换过来，或停服时手动向config.conf添加了记录都会走这里
+     */
+    private void importHoconTables() {
+        Map<String, BanEntry> residualBans = new HashMap<>();
+        Map<String, FakeBanEntry> residualFakeBans = new HashMap<>();
+        loadHoconTables(residualBans, residualFakeBans);
+        replayJournal(residualBans, residualFakeBans);
+        snapshotRequired = false;
+        List<BanEntry> importedBans = new ArrayList<>(residualBans.values());
+        List<FakeBanEntry> importedFakeBans = new ArrayList<>(residualFakeBans.values());
+        bans.putAll(residualBans);
+        fakeBans.putAll(residualFakeBans);
+        if (importedBans.isEmpty() && importedFakeBans.isEmpty()) {
+            return;
+        }
+        try {
+            store.write(importedBans, importedFakeBans);
+        } catch (Exception e) {
+            // 保留config.conf中的数据，写盘时再整体写入数据库
+            System.err.println("导入config.conf中的封禁数据失败: " + e.getMessage());
+            snapshotRequired = true;
+            return;
+        }
+        Config cleared = config
+                .withValue("bans", ConfigValueFactory.fromMap(new HashMap<>()))
+                .withValue("fakebans", ConfigValueFactory.fromMap(new HashMap<>()));
+        if (saveConfig(cleared)) {
+            try {
+                journal.reset(journalGeneration);
+            } catch (IOException e) {
+                System.err.println("重置变更日志失败: " + e.getMessage());
+            }
+            snapshotFile.deleteOlderThan(Long.MAX_VALUE);
+        }
+        System.out.println("已将config.conf中的 " + importedBans.size() + " 条封禁记录和 " +
+                importedFakeBans.size() + " 条临时封禁记录导入数据库");
+    }
+
+    /**
+     * config.conf后端：封禁表保存在config.conf（或二进制快照）中，修改追加到变更日志，超过阈值后合并为新快照；
+     * 关闭变更日志时每次写盘都重写完整快照
+     */
+    private final class HoconStore implements BanStore {
+        @Override
+        public void load(Map<String, BanEntry> bans, Map<String, FakeBanEntry> fakeBans) {
+            loadHoconTables(bans, fakeBans);
+            replayJournal(bans, fakeBans);
+        }
+
+        @Override
+        public void write(List<BanEntry> banList, List<FakeBanEntry> fakeBanList) throws IOException {
+            if (!isJournalEnabled()) {
+                writeAllCurrent();
+                return;
+            }
+            List<String> records = new ArrayList<>(banList.size() + fakeBanList.size());
+            banList.forEach(entry -> records.add(BanJournal.encode(entry)));
+            fakeBanList.forEach(entry -> records.add(BanJournal.encode(entry)));
+            try {
+                long start = System.nanoTime();
+                journal.append(records);
+                metrics.getJournalAppend().recordSince(start);
+            } catch (Exception e) {
+                System.err.println("写入变更日志失败，改为写入完整快照: " + e.getMessage());
+                writeAllCurrent();
+                return;
+            }
+            if (journal.size() > getCompactThresholdBytes()) {
+                writeAllCurrent();
+            }
+        }
+
+        @Override
+        public void writeAll(List<BanEntry> banList, List<FakeBanEntry> fakeBanList) throws IOException {
+            compact(banList, fakeBanList);
+        }
+
+        @Override
+        public void close() {
+            journal.close();
+        }
+
+        private void writeAllCurrent() throws IOException {
+            List<BanEntry> banList;
+            List<FakeBanEntry> fakeBanList;
+            synchronized (ConfigManager.this) {
+                banList = new ArrayList<>(bans.values());
+                fakeBanList = new ArrayList<>(fakeBans.values());
+            }
+            compact(banList, fakeBanList);
+        }
+    }
+
+    /**
+     * 加载封禁表到给定的表：二进制快照存在且不比config.conf旧（按代号比较）时从快照加载，否则解析config.conf
+     */
+    private void loadHoconTables(Map<String, BanEntry> bans, Map<String, FakeBanEntry> fakeBans) {
+        long configGeneration = config.hasPath("journal_generation") ? config.getLong("journal_generation") : 0;
+        Path latestSnapshot = null;
+        Map<String, BanEntry> snapshotBans = new HashMap<>();
+        Map<String, FakeBanEntry> snapshotFakeBans = new HashMap<>();
+        try {
+            latestSnapshot = snapshotFile.latest();
+            if (latestSnapshot != null && BanSnapshotFile.generationOf(latestSnapshot) >= configGeneration) {
+                journalGeneration = snapshotFile.load(latestSnapshot, snapshotBans, snapshotFakeBans);
+            } else {
+                latestSnapshot = null;
+            }
+        } catch (Exception e) {
+            // 快照损坏时退回config.conf，不影响设置的加载
+            System.err.println("加载二进制快照失败，改为从config.conf加载: " + e.getMessage());
+            latestSnapshot = null;
+            snapshotBans.clear();
+            snapshotFakeBans.clear();
+        }
+
+        if (latestSnapshot != null) {
+            // 快照写入后又手动编辑了config.conf中的封禁表，以手动编辑的内容为准
+            boolean edited = hasHoconTables() &&
+                    configFile.lastModified() > latestSnapshot.toFile().lastModified();
+            if (edited) {
+                loadBans(bans);
+                loadFakeBans(fakeBans);
+                System.out.println("检测到config.conf中手动添加的 " + (bans.size() + fakeBans.size()) + " 条记录，已合并到快照");
+            } else {
+                bans.clear();
+                fakeBans.clear();
+            }
+            snapshotBans.forEach(bans::putIfAbsent);
+            snapshotFakeBans.forEach(fakeBans::putIfAbsent);
+            System.out.println("从二进制快照 " + latestSnapshot.getFileName() + " 加载了 " + snapshotBans.size() +
+                    " 条封禁记录和 " + snapshotFakeBans.size() + " 条临时封禁记录");
+
+            // 合并了手动编辑的内容，或已关闭二进制快照（需要写回config.conf）时重建快照
+            if (edited || !isBinarySnapshotEnabled()) {
+                snapshotRequired = true;
+            }
+        } else {
+            loadBans(bans);
+            loadFakeBans(fakeBans);
+            journalGeneration = configGeneration;
+            if (isBinarySnapshotEnabled()) {
+                // 快照缺失或比config.conf旧，重建
+                snapshotRequired = true;
+            }
+        }
+    }
+
+    private boolean hasHoconTables() {
+        try {
+            return (config.hasPath("bans") && !config.getObject("bans").isEmpty()) ||
+                    (config.hasPath("fakebans") && !config.getObject("fakebans").isEmpty());
+        } catch (ConfigException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 启动时在快照之上重放变更日志（作用于给定的表）
+     */
+    private void replayJournal(Map<String, BanEntry> bans, Map<String, FakeBanEntry> fakeBans) {
+        try {
+            int applied = journal.replay(journalGeneration, bans, fakeBans);
+            if (applied > 0) {
+                System.out.println("从变更日志重放了 " + applied + " 条封禁记录修改");
+                if (!isJournalEnabled()) {
+                    // 已关闭变更日志，把重放的修改合并进快照
+                    snapshotRequired = true;
+                }
+            } else if (isJournalEnabled()) {
+                // 日志为空或与快照不匹配，从当前快照重新开始记录
+                journal.reset(journalGeneration);
+            }
+        } catch (Exception e) {
+            System.err.println("重放变更日志失败: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 关闭时强制写入所有未保存的修改，并把变更日志合并进快照，
+     * 这样停服后的config.conf总是完整的，可以直接手动编辑
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+            }
+            // 数据库后端的每次写入都已是最终形式，只有config.conf后端需要合并日志
+            if (store instanceof HoconStore) {
+                snapshotRequired = true;
+            }
+        }
+        flusher.shutdown();
+        flush();
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private static <T> Map<String, Object> tableToMap(Collection<T> table, Function<T, String> key,
+                                                      Function<T, Map<String, Object>> converter) {
+        Map<String, Object> result = new HashMap<>();
+        for (T entry : table) {
+            result.put(key.apply(entry), converter.apply(entry));
+        }
+        return result;
+    }
+
+    private boolean saveConfig(Config updatedConfig) {
         try {
             // 使用格式化的渲染选项来保持嵌套结构
             ConfigRenderOptions options = ConfigRenderOptions.defaults()
                     .setOriginComments(false)
                     .setComments(false)
                     .setFormatted(true);
-            String configContent = updatedConfig.root().render(options);
-            java.nio.file.Files.write(configFile.toPath(), configContent.getBytes("UTF-8"));
+            byte[] configContent = updatedConfig.root().render(options).getBytes(StandardCharsets.UTF_8);
+            // 先写临时文件再替换，避免写到一半时崩溃导致配置文件损坏
+            Path target = configFile.toPath();
+            Path temp = target.resolveSibling(configFile.getName() + ".tmp");
+            Files.write(temp, configContent);
+            // 先记录校验值，监视线程收到这次写入的通知时会忽略它
+            configChecksum = checksum(configContent);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
             config = updatedConfig;
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
+            return false;
         }
     }
 
-    private void loadBans() {
+    private void loadBans(Map<String, BanEntry> bans) {
         // 清空现有封禁列表
         bans.clear();
 
@@ -188,7 +1262,7 @@ public class ConfigManager {
             // 检查是否是扁平化的配置（损坏的格式）
             if (detectFlattenedConfig()) {
                 System.out.println("检测到扁平化的配置文件，尝试修复...");
-                fixFlattenedConfig();
+                fixFlattenedConfig(bans);
                 return;
             }
 
@@ -208,60 +1282,10 @@ public class ConfigManager {
                 }
 
                 try {
-                    ConfigObject playerObject = (ConfigObject) value;
-
-                    // 创建 BanEntry 并填充数据
-                    BanEntry banEntry = new BanEntry();
-                    banEntry.setName(playerName);
-
-                    // 安全地获取各个字段
-                    ConfigValue uuidValue = playerObject.get("uuid");
-                    if (uuidValue != null && uuidValue.valueType() == ConfigValueType.STRING) {
-                        banEntry.setUuid((String) uuidValue.unwrapped());
-                    } else {
-                        banEntry.setUuid(null);
-                    }
-
-                    ConfigValue ipValue = playerObject.get("ip");
-                    if (ipValue != null && ipValue.valueType() == ConfigValueType.STRING) {
-                        banEntry.setIp((String) ipValue.unwrapped());
-                    } else {
-                        banEntry.setIp(null);
-                    }
-
-                    // 获取必需字段
-                    ConfigValue reasonValue = playerObject.get("reason");
-                    if (reasonValue != null && reasonValue.valueType() == ConfigValueType.STRING) {
-                        banEntry.setReason((String) reasonValue.unwrapped());
-                    } else {
-                        System.err.println("Missing or invalid reason for player '" + playerName + "'. Skipping...");
-                        continue;
-                    }
-
-                    ConfigValue startTimeValue = playerObject.get("start_time");
-                    if (startTimeValue != null && startTimeValue.valueType() == ConfigValueType.NUMBER) {
-                        banEntry.setStartTime(((Number) startTimeValue.unwrapped()).longValue());
-                    } else {
-                        System.err.println("Missing or invalid start_time for player '" + playerName + "'. Skipping...");
+                    BanEntry banEntry = parseBan(playerName, (ConfigObject) value);
+                    if (banEntry == null) {
                         continue;
                     }
-
-                    ConfigValue stateValue = playerObject.get("state");
-                    if (stateValue != null && stateValue.valueType() == ConfigValueType.BOOLEAN) {
-                        banEntry.setState((Boolean) stateValue.unwrapped());
-                    } else {
-                        System.err.println("Missing or invalid state for player '" + playerName + "'. Skipping...");
-                        continue;
-                    }
-
-                    // 处理可能为空的 end_time
-                    ConfigValue endTimeValue = playerObject.get("end_time");
-                    if (endTimeValue != null && endTimeValue.valueType() == ConfigValueType.NUMBER) {
-                        banEntry.setEndTime(((Number) endTimeValue.unwrapped()).longValue());
-                    } else {
-                        banEntry.setEndTime(null); // 永久封禁
-                    }
-
                     bans.put(playerName, banEntry);
 
                 } catch (Exception e) {
@@ -275,7 +1299,70 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * 解析一条封禁记录，必需字段缺失或格式错误时返回null
+     */
+    private static BanEntry parseBan(String playerName, ConfigObject playerObject) {
+        // 创建 BanEntry 并填充数据
+        BanEntry banEntry = new BanEntry();
+        banEntry.setName(playerName);
+
+        // 安全地获取各个字段
+        ConfigValue uuidValue = playerObject.get("uuid");
+        if (uuidValue != null && uuidValue.valueType() == ConfigValueType.STRING) {
+            banEntry.setUuid((String) uuidValue.unwrapped());
+        } else {
+            banEntry.setUuid(null);
+        }
+
+        ConfigValue ipValue = playerObject.get("ip");
+        if (ipValue != null && ipValue.valueType() == ConfigValueType.STRING) {
+            banEntry.setIp((String) ipValue.unwrapped());
+        } else {
+            banEntry.setIp(null);
+        }
+
+        // 获取必需字段
+        ConfigValue reasonValue = playerObject.get("reason");
+        if (reasonValue != null && reasonValue.valueType() == ConfigValueType.STRING) {
+            banEntry.setReason((String) reasonValue.unwrapped());
+        } else {
+            System.err.println("Missing or invalid reason for player '" + playerName + "'. Skipping...");
+            return null;
+        }
+
+        ConfigValue startTimeValue = playerObject.get("start_time");
+        if (startTimeValue != null && startTimeValue.valueType() == ConfigValueType.NUMBER) {
+            banEntry.setStartTime(((Number) startTimeValue.unwrapped()).longValue());
+        } else {
+            System.err.println("Missing or invalid start_time for player '" + playerName + "'. Skipping...");
+            return null;
+        }
+
+        ConfigValue stateValue = playerObject.get("state");
+        if (stateValue != null && stateValue.valueType() == ConfigValueType.BOOLEAN) {
+            banEntry.setState((Boolean) stateValue.unwrapped());
+        } else {
+            System.err.println("Missing or invalid state for player '" + playerName + "'. Skipping...");
+            return null;
+        }
+
+        // 处理可能为空的 end_time
+        ConfigValue endTimeValue = playerObject.get("end_time");
+        if (endTimeValue != null && endTimeValue.valueType() == ConfigValueType.NUMBER) {
+            banEntry.setEndTime(((Number) endTimeValue.unwrapped()).longValue());
+        } else {
+            banEntry.setEndTime(null); // 永久封禁
+        }
+
+        return banEntry;
+    }
+
     private boolean detectFlattenedConfig() {
+        return detectFlattenedConfig(config);
+    }
+
+    private static boolean detectFlattenedConfig(Config config) {
         // 检查是否存在类似 "player.field" 的键，这表明配置被扁平化了
         for (String key : config.root().keySet()) {
             if (key.contains(".") && (key.endsWith(".name") || key.endsWith(".uuid") ||
@@ -288,7 +1375,7 @@ public class ConfigManager {
         return false;
     }
 
-    private void fixFlattenedConfig() {
+    private void fixFlattenedConfig(Map<String, BanEntry> bans) {
         try {
             // 收集所有扁平化的数据
             Map<String, Map<String, Object>> playerData = new HashMap<>();
@@ -321,7 +1408,7 @@ public class ConfigManager {
 
             // 重新加载
             config = fixedConfig;
-            loadBans();
+            loadBans(bans);
 
             System.out.println("配置文件修复完成，重新加载了 " + playerData.size() + " 个玩家的封禁记录");
 
@@ -334,7 +1421,7 @@ public class ConfigManager {
     /**
      * 加载临时封禁数据
      */
-    public void loadFakeBans() {
+    private void loadFakeBans(Map<String, FakeBanEntry> fakeBans) {
         fakeBans.clear();
         try {
             if (!config.hasPath("fakebans")) {
@@ -345,46 +1432,10 @@ public class ConfigManager {
             for (Map.Entry<String, ConfigValue> entry : fakeBansObject.entrySet()) {
                 String playerName = entry.getKey();
                 try {
-                    ConfigObject playerObject = (ConfigObject) entry.getValue();
+                    FakeBanEntry fakeBanEntry = parseFakeBan(playerName, (ConfigObject) entry.getValue());
 
-                    FakeBanEntry fakeBanEntry = new FakeBanEntry();
-                    fakeBanEntry.setName(playerName);
-
-                    // 处理可能为空的 UUID 和 IP
-                    ConfigValue uuidValue = playerObject.get("uuid");
-                    if (uuidValue != null && uuidValue.valueType() != ConfigValueType.NULL) {
-                        fakeBanEntry.setUuid((String) uuidValue.unwrapped());
-                    }
-
-                    ConfigValue ipValue = playerObject.get("ip");
-                    if (ipValue != null && ipValue.valueType() != ConfigValueType.NULL) {
-                        fakeBanEntry.setIp((String) ipValue.unwrapped());
-                    }
-
-                    ConfigValue reasonValue = playerObject.get("reason");
-                    if (reasonValue != null && reasonValue.valueType() == ConfigValueType.STRING) {
-                        fakeBanEntry.setReason((String) reasonValue.unwrapped());
-                    }
-
-                    ConfigValue startTimeValue = playerObject.get("start_time");
-                    if (startTimeValue != null && startTimeValue.valueType() == ConfigValueType.NUMBER) {
-                        fakeBanEntry.setStartTime(((Number) startTimeValue.unwrapped()).longValue());
-                    }
-
-                    ConfigValue endTimeValue = playerObject.get("end_time");
-                    if (endTimeValue != null && endTimeValue.valueType() == ConfigValueType.NUMBER) {
-                        fakeBanEntry.setEndTime(((Number) endTimeValue.unwrapped()).longValue());
-                    }
-
-                    ConfigValue stateValue = playerObject.get("state");
-                    if (stateValue != null && stateValue.valueType() == ConfigValueType.BOOLEAN) {
-                        fakeBanEntry.setState((Boolean) stateValue.unwrapped());
-                    }
-
-                    // 只加载有效且未过期的临时封禁
-                    if (fakeBanEntry.getState() && !fakeBanEntry.isExpired()) {
-                        fakeBans.put(playerName, fakeBanEntry);
-                    }
+                    // 保留全部记录（包括已解除的），写盘时才不会丢失历史
+                    fakeBans.put(playerName, fakeBanEntry);
 
                 } catch (Exception e) {
                     System.err.println("Error loading fakeban data for player '" + playerName + "': " + e.getMessage());
@@ -395,26 +1446,100 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * 解析一条临时封禁记录
+     */
+    private static FakeBanEntry parseFakeBan(String playerName, ConfigObject playerObject) {
+        FakeBanEntry fakeBanEntry = new FakeBanEntry();
+        fakeBanEntry.setName(playerName);
+
+        // 处理可能为空的 UUID 和 IP
+        ConfigValue uuidValue = playerObject.get("uuid");
+        if (uuidValue != null && uuidValue.valueType() != ConfigValueType.NULL) {
+            fakeBanEntry.setUuid((String) uuidValue.unwrapped());
+        }
+
+        ConfigValue ipValue = playerObject.get("ip");
+        if (ipValue != null && ipValue.valueType() != ConfigValueType.NULL) {
+            fakeBanEntry.setIp((String) ipValue.unwrapped());
+        }
+
+        ConfigValue reasonValue = playerObject.get("reason");
+        if (reasonValue != null && reasonValue.valueType() == ConfigValueType.STRING) {
+            fakeBanEntry.setReason((String) reasonValue.unwrapped());
+        }
+
+        ConfigValue startTimeValue = playerObject.get("start_time");
+        if (startTimeValue != null && startTimeValue.valueType() == ConfigValueType.NUMBER) {
+            fakeBanEntry.setStartTime(((Number) startTimeValue.unwrapped()).longValue());
+        }
+
+        ConfigValue endTimeValue = playerObject.get("end_time");
+        if (endTimeValue != null && endTimeValue.valueType() == ConfigValueType.NUMBER) {
+            fakeBanEntry.setEndTime(((Number) endTimeValue.unwrapped()).longValue());
+        }
+
+        ConfigValue stateValue = playerObject.get("state");
+        if (stateValue != null && stateValue.valueType() == ConfigValueType.BOOLEAN) {
+            fakeBanEntry.setState((Boolean) stateValue.unwrapped());
+        }
+
+        return fakeBanEntry;
+    }
+
     /**
      * 添加临时封禁记录
      */
     public void addFakeBan(FakeBanEntry entry) {
-        Config updatedConfig = config.withValue("fakebans." + entry.getName(),
-                ConfigValueFactory.fromMap(fakeBanEntryToMap(entry)));
-        saveConfig(updatedConfig);
-        loadFakeBans();
+        synchronized (this) {
+            putFakeBan(entry);
+            fakeBanChanged(entry.getName());
+        }
+        markDirty();
     }
 
     /**
-     * 设置临时封禁状态
+     * 写入临时封禁记录（调用方需持有对象锁）；已有大小写不同的同名记录时改用原记录名，覆盖原记录
+     */
+    private void putFakeBan(FakeBanEntry entry) {
+        String lowerName = entry.getName().toLowerCase(Locale.ROOT);
+        String key = fakeBanKeys.get(lowerName);
+        if (key != null && fakeBans.containsKey(key)) {
+            entry.setName(key);
+        } else {
+            fakeBanKeys.put(lowerName, entry.getName());
+        }
+        fakeBans.put(entry.getName(), entry);
+    }
+
+    /**
+     * 设置临时封禁状态（玩家名忽略大小写）
      */
     public void setFakeBanState(String playerName, boolean state) {
-        if (config.hasPath("fakebans." + playerName)) {
-            Config updatedConfig = config.withValue("fakebans." + playerName + ".state",
-                    ConfigValueFactory.fromAnyRef(state));
-            saveConfig(updatedConfig);
-            loadFakeBans();
+        synchronized (this) {
+            FakeBanEntry entry = findFakeBan(playerName);
+            if (entry == null) {
+                return;
+            }
+            entry.setState(state);
+            fakeBanChanged(entry.getName());
+        }
+        markDirty();
+    }
+
+    /**
+     * 临时封禁到期时标记为已解除（记录已被新的临时封禁取代时不做处理）
+     * 到期只写入本地，不同步给其他代理：每个代理都按同样的结束时间各自到期，同步只会让同一条到期被重复发布
+     */
+    void expireFakeBan(FakeBanEntry entry) {
+        synchronized (this) {
+            if (fakeBans.get(entry.getName()) != entry || !entry.getState()) {
+                return;
+            }
+            entry.setState(false);
+            dirtyFakeBans.add(entry.getName());
         }
+        markDirty();
     }
 
     /**
@@ -437,19 +1562,20 @@ public class ConfigManager {
      */
     public void cleanupExpiredFakeBans() {
         boolean hasChanges = false;
-        Config updatedConfig = config;
 
-        for (Map.Entry<String, FakeBanEntry> entry : new HashMap<>(fakeBans).entrySet()) {
-            if (entry.getValue().isExpired()) {
-                updatedConfig = updatedConfig.withValue("fakebans." + entry.getKey() + ".state",
-                        ConfigValueFactory.fromAnyRef(false));
-                hasChanges = true;
+        synchronized (this) {
+            for (FakeBanEntry entry : fakeBans.values()) {
+                if (entry.getState() && entry.isExpired()) {
+                    entry.setState(false);
+                    // 同expireFakeBan，到期只写入本地
+                    dirtyFakeBans.add(entry.getName());
+                    hasChanges = true;
+                }
             }
         }
 
         if (hasChanges) {
-            saveConfig(updatedConfig);
-            loadFakeBans();
+            markDirty();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 配置文件热重载
+ * 用WatchService监视config.conf所在目录，文件变化后等待片刻（合并编辑器的多次写入），在后台线程重新解析并与上次的内容比较，
+ * 只应用变化的封禁、临时封禁记录，白名单和其他设置整体替换；插件自己写入配置文件引起的通知按内容校验值忽略
+ * /bt reload 也走同一流程
+ */
+public class ConfigReloader {
+    private final ConfigManager configManager;
+    private final BanManager banManager;
+    private final FakeBanManager fakeBanManager;
+    private final WhitelistManager whitelistManager;
+    private final Logger logger;
+    private final Path configFile;
+    // 解析与应用都在这一个线程上执行，多次重新加载不会并发
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "BanTools-ConfigReloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private WatchService watchService;
+    private ScheduledFuture<?> pendingReload;
+
+    public ConfigReloader(ConfigManager configManager, BanManager banManager, FakeBanManager fakeBanManager,
+                          WhitelistManager whitelistManager, Logger logger) {
+        this.configManager = configManager;
+        this.banManager = banManager;
+        this.fakeBanManager = fakeBanManager;
+        this.whitelistManager = whitelistManager;
+        this.logger = logger;
+        this.configFile = configManager.getConfigFile().getAbsoluteFile().toPath();
+    }
+
+    /**
+     * 开始监视配置文件
+     */
+    public void startWatching() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            // 写入配置文件时先写临时文件再改名，改名在目录上表现为新建
+            configFile.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.error("无法监视配置文件，修改后请使用 /bt reload", e);
+            return;
+        }
+        Thread watchThread = new Thread(this::watch, "BanTools-ConfigWatcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        logger.info("正在监视配置文件: " + configFile);
+    }
+
+    private void watch() {
+        Path fileName = configFile.getFileName();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= fileName.equals(event.context());
+                }
+                if (changed) {
+                    scheduleReload();
+                }
+                if (!key.reset()) {
+                    logger.warn("配置文件目录已不可访问，停止监视");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 插件关闭
+        }
+    }
+
+    /**
+     * 最后一次变化后等待debounce_ms再加载，期间的新变化重新计时
+     */
+    private synchronized void scheduleReload() {
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+        }
+        pendingReload = executor.schedule(() -> reload(false, message -> logger.info(message)),
+                configManager.getReloadDebounceMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 立即在后台重新加载（/bt reload），文件内容未变化时同样刷新白名单
+     * @param progress 结果消息的接收方
+     */
+    public void reloadNow(Consumer<String> progress) {
+        executor.execute(() -> reload(true, progress));
+    }
+
+    private void reload(boolean manual, Consumer<String> progress) {
+        long start = System.nanoTime();
+        ConfigManager.TableChanges changes;
+        try {
+            changes = configManager.applyExternalEdit();
+        } catch (IOException e) {
+            // 编辑器保存时文件可能暂时不存在，之后的新建通知会再次触发
+            if (manual) {
+                progress.accept("读取配置文件失败: " + e.getMessage());
+            }
+            return;
+        } catch (Exception e) {
+            logger.error("配置文件解析失败，继续使用当前配置", e);
+            if (manual) {
+                progress.accept("配置文件解析失败，继续使用当前配置: " + e.getMessage());
+            }
+            return;
+        }
+        if (changes == null) {
+            if (manual) {
+                whitelistManager.loadWhitelist();
+                progress.accept("配置文件没有变化");
+            }
+            return;
+        }
+        banManager.applyReloadedBans(changes.bans, changes.removedBans);
+        fakeBanManager.applyReloadedFakeBans(changes.fakeBans, changes.removedFakeBans);
+        whitelistManager.loadWhitelist();
+        configManager.getMetrics().getBanReload().recordSince(start);
+        progress.accept("配置已重新加载，" + (changes.isEmpty() ? "封禁记录没有变化" :
+                "应用了 " + changes.size() + " 条封禁记录的修改"));
+    }
+
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
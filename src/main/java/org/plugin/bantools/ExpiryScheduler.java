@@ -0,0 +1,295 @@
+package org.plugin.bantools;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 到期调度器
+ * 分层时间轮，BanManager与FakeBanManager共用一个实例：
+ * 登记与取消都是O(1)；只有非空的槽位会进入延迟队列，工作线程阻塞到最近一个槽位到期为止，
+ * 没有记录到期时不会被唤醒。槽位按刻度（默认1秒）对齐，最后不足一个刻度的部分单独等待，任务不会早于到期时间执行
+ */
+public class ExpiryScheduler {
+    private static final long DEFAULT_TICK_MILLIS = 1000;
+    private static final int DEFAULT_WHEEL_SIZE = 64;
+
+    private final Logger logger;
+    private final DelayQueue<Bucket> queue = new DelayQueue<>();
+    private final TimingWheel wheel;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public ExpiryScheduler(Logger logger) {
+        this(logger, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    ExpiryScheduler(Logger logger, long tickMillis, int wheelSize) {
+        this.logger = logger;
+        this.wheel = new TimingWheel(tickMillis, wheelSize, System.currentTimeMillis(), queue);
+        this.worker = new Thread(this::run, "BanTools-Expiry");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 登记一个到期任务
+     * @param deadline 到期时间（毫秒时间戳），已经过去时任务立即在调度线程上执行
+     * @param task 到期时执行的任务，应当轻量且不阻塞
+     * @return 可用于取消的句柄
+     */
+    public Timeout schedule(long deadline, Runnable task) {
+        Timeout timeout = new Timeout(deadline, task);
+        boolean added;
+        synchronized (this) {
+            added = running && wheel.add(timeout);
+        }
+        if (!added && running) {
+            // 不足一个刻度，单独等待到期后交给调度线程执行，避免在调用方线程上运行回调
+            queue.offer(Bucket.single(timeout));
+        }
+        return timeout;
+    }
+
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            Bucket bucket;
+            try {
+                bucket = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            List<Timeout> expired = new ArrayList<>();
+            synchronized (this) {
+                // 同一时刻可能有多个槽位到期，一并处理
+                while (bucket != null) {
+                    wheel.advanceClock(bucket.getExpiration());
+                    long now = System.currentTimeMillis();
+                    for (Timeout timeout : bucket.drain()) {
+                        // 高层槽位的任务在这里降级到低层时间轮，真正到期的才执行
+                        if (wheel.add(timeout)) {
+                            continue;
+                        }
+                        if (timeout.deadline <= now) {
+                            expired.add(timeout);
+                        } else {
+                            queue.offer(Bucket.single(timeout));
+                        }
+                    }
+                    bucket = queue.poll();
+                }
+            }
+            for (Timeout timeout : expired) {
+                timeout.fire(logger);
+            }
+        }
+    }
+
+    /**
+     * 到期任务句柄
+     */
+    public static final class Timeout {
+        private final long deadline;
+        private final Runnable task;
+        private volatile boolean cancelled;
+        // 所在槽位，链表指针由槽位的锁保护
+        private volatile Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * 取消任务，已执行的任务取消无效果
+         */
+        public void cancel() {
+            cancelled = true;
+            Bucket current = bucket;
+            if (current != null) {
+                current.remove(this);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void fire(Logger logger) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("执行到期任务时发生错误", e);
+            }
+        }
+    }
+
+    /**
+     * 时间轮槽位：双向链表，整个槽位以其到期时间进入延迟队列
+     */
+    private static final class Bucket implements Delayed {
+        private final Timeout head = new Timeout(0, null);
+        private volatile long expiration = -1;
+
+        Bucket() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        /**
+         * 只包含一个任务、以该任务的精确到期时间排队的槽位
+         */
+        static Bucket single(Timeout timeout) {
+            Bucket bucket = new Bucket();
+            bucket.add(timeout);
+            bucket.expiration = timeout.deadline;
+            return bucket;
+        }
+
+        synchronized void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = head.prev;
+            timeout.next = head;
+            head.prev.next = timeout;
+            head.prev = timeout;
+        }
+
+        synchronized void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            timeout.prev.next = timeout.next;
+            timeout.next.prev = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * 取出全部任务并重置槽位，槽位可被时间轮再次使用
+         */
+        synchronized List<Timeout> drain() {
+            List<Timeout> timeouts = new ArrayList<>();
+            Timeout current = head.next;
+            while (current != head) {
+                Timeout next = current.next;
+                current.prev = null;
+                current.next = null;
+                current.bucket = null;
+                if (!current.cancelled) {
+                    timeouts.add(current);
+                }
+                current = next;
+            }
+            head.prev = head;
+            head.next = head;
+            expiration = -1;
+            return timeouts;
+        }
+
+        /**
+         * 设置槽位到期时间，返回是否发生变化（变化说明槽位需要重新进入延迟队列）
+         */
+        boolean setExpiration(long newExpiration) {
+            if (expiration == newExpiration) {
+                return false;
+            }
+            expiration = newExpiration;
+            return true;
+        }
+
+        long getExpiration() {
+            return expiration;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(expiration - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket) other).expiration);
+        }
+    }
+
+    /**
+     * 单层时间轮，超出本层范围的任务交给按需创建的上层时间轮（刻度为本层一整圈）
+     */
+    private static final class TimingWheel {
+        private final long tickMillis;
+        private final int wheelSize;
+        private final long interval;
+        private final Bucket[] buckets;
+        private final DelayQueue<Bucket> queue;
+        private long currentTime;
+        private TimingWheel overflowWheel;
+
+        TimingWheel(long tickMillis, int wheelSize, long startMillis, DelayQueue<Bucket> queue) {
+            this.tickMillis = tickMillis;
+            this.wheelSize = wheelSize;
+            this.interval = tickMillis * wheelSize;
+            this.queue = queue;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startMillis - (startMillis % tickMillis);
+        }
+
+        /**
+         * 放入时间轮，已到期时返回false
+         */
+        boolean add(Timeout timeout) {
+            long deadline = timeout.deadline;
+            if (deadline < currentTime + tickMillis) {
+                return false;
+            }
+            if (deadline < currentTime + interval) {
+                long virtualId = deadline / tickMillis;
+                Bucket bucket = buckets[(int) (virtualId % wheelSize)];
+                bucket.add(timeout);
+                if (bucket.setExpiration(virtualId * tickMillis)) {
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflowWheel == null) {
+                overflowWheel = new TimingWheel(interval, wheelSize, currentTime, queue);
+            }
+            return overflowWheel.add(timeout);
+        }
+
+        void advanceClock(long timeMillis) {
+            if (timeMillis >= currentTime + tickMillis) {
+                currentTime = timeMillis - (timeMillis % tickMillis);
+                if (overflowWheel != null) {
+                    overflowWheel.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+}
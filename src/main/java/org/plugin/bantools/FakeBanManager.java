@@ -5,40 +5,54 @@ import com.velocitypowered.api.proxy.ProxyServer;
 import net.kyori.adventure.text.Component;
 import org.slf4j.Logger;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * 临时封禁管理器
  * 管理fakeban功能，包括确认机制和自动过期清理
+ * 每条临时封禁和待确认操作都在共用的ExpiryScheduler上登记到期任务，到期时逐条处理，无需定时全量扫描
  */
 public class FakeBanManager {
     private final ConfigManager configManager;
     private final WhitelistManager whitelistManager;
     private final ProxyServer server;
     private final Logger logger;
-    private final ScheduledExecutorService scheduler;
+    private final ExpiryScheduler expiryScheduler;
     
     // 存储待确认的fakeban操作
     private final Map<String, PendingFakeBan> pendingFakeBans = new ConcurrentHashMap<>();
     // 存储活跃的临时封禁记录
     private final Map<String, FakeBanEntry> activeFakeBans = new ConcurrentHashMap<>();
+    // 临时封禁的到期任务，键与activeFakeBans一致
+    private final Map<String, ExpiryScheduler.Timeout> fakeBanExpiries = new ConcurrentHashMap<>();
+    // 活跃临时封禁的玩家名、UUID、IP的布隆过滤器，未启用时为null；加入活跃列表和重建都在filterLock下进行
+    private volatile BanFilter fakeBanFilter;
+    private final Object filterLock = new Object();
+    // 活跃临时封禁玩家名的补全索引，与活跃列表一同在filterLock下更新
+    private final NameCompletionIndex fakeBannedNames = new NameCompletionIndex();
 
     public FakeBanManager(ConfigManager configManager, WhitelistManager whitelistManager, 
-                         ProxyServer server, Logger logger) {
+                         ProxyServer server, Logger logger, ExpiryScheduler expiryScheduler) {
         this.configManager = configManager;
         this.whitelistManager = whitelistManager;
         this.server = server;
         this.logger = logger;
-        this.scheduler = Executors.newScheduledThreadPool(2);
+        this.expiryScheduler = expiryScheduler;
+        configManager.getMetrics().registerGauge("active_fakebans", activeFakeBans::size);
+        configManager.getMetrics().registerGauge("pending_fakebans", pendingFakeBans::size);
+        configManager.getMetrics().registerGauge("fakeban_filter_bytes", () -> {
+            BanFilter filter = fakeBanFilter;
+            return filter == null ? 0 : filter.getMemoryBytes();
+        });
         
+        // 启动前已过期但仍标记为有效的记录只需处理一次
+        configManager.cleanupExpiredFakeBans();
         loadActiveFakeBans();
-        startCleanupTask();
     }
 
     /**
@@ -101,13 +115,15 @@ public class FakeBanManager {
         String finalReason = (reason == null || reason.trim().isEmpty()) ? 
                 configManager.getDefaultFakeBanReason() : reason.trim();
         
-        pendingFakeBans.put(pendingKey, new PendingFakeBan(adminName, targetPlayer, finalReason, expireTime));
+        PendingFakeBan pending = new PendingFakeBan(adminName, targetPlayer, finalReason, expireTime);
+        pendingFakeBans.put(pendingKey, pending);
         
         // 设置自动清理
-        scheduler.schedule(() -> {
-            pendingFakeBans.remove(pendingKey);
-            logger.info("管理员 " + adminName + " 的fakeban确认已超时：" + targetPlayer);
-        }, timeoutMinutes, TimeUnit.MINUTES);
+        expiryScheduler.schedule(expireTime, () -> {
+            if (pendingFakeBans.remove(pendingKey, pending)) {
+                logger.info("管理员 " + adminName + " 的fakeban确认已超时：" + targetPlayer);
+            }
+        });
 
         return configManager.getFakeBanConfirmationMessage();
     }
@@ -158,7 +174,7 @@ public class FakeBanManager {
             configManager.addFakeBan(fakeBanEntry);
             
             // 添加到活跃列表
-            activeFakeBans.put(targetPlayer, fakeBanEntry);
+            activateFakeBan(fakeBanEntry);
 
             // 踢出在线玩家
             kickPlayer(targetPlayer, reason);
@@ -189,46 +205,111 @@ public class FakeBanManager {
             return "该玩家没有有效的临时封禁记录！";
         }
 
-        // 设置为非活跃状态
-        configManager.setFakeBanState(targetPlayer, false);
-        activeFakeBans.remove(targetPlayer);
+        // 设置为非活跃状态（使用记录中的玩家名，避免大小写不一致）
+        configManager.setFakeBanState(fakeBan.getName(), false);
+        if (deactivateFakeBan(fakeBan)) {
+            cancelExpiry(fakeBan.getName());
+        }
 
         logger.info("成功解除临时封禁: " + targetPlayer);
         return "成功解除临时封禁: " + targetPlayer;
     }
 
+    /**
+     * 应用其他代理同步来的临时封禁记录：生效中的加入活跃列表并踢出在线玩家，已解除的移出活跃列表
+     * 比本地记录旧的同步记录会被忽略
+     */
+    void applySyncedFakeBan(FakeBanEntry entry) {
+        if (!configManager.putSyncedFakeBan(entry)) {
+            return;
+        }
+        if (entry.getState() && !entry.isExpired()) {
+            activateFakeBan(entry);
+            kickPlayer(entry.getName(), entry.getReason());
+            logger.info("同步临时封禁: " + entry.getName());
+        } else {
+            FakeBanEntry current = activeFakeBans.get(entry.getName());
+            if (current != null && deactivateFakeBan(current)) {
+                cancelExpiry(current.getName());
+                logger.info("同步解除临时封禁: " + entry.getName());
+            }
+        }
+    }
+
+    /**
+     * 应用config.conf被外部修改后变化的临时封禁记录（ConfigManager已更新其中的表）
+     * 临时封禁没有快照，逐条替换：每条记录的切换都是原子的，不会出现同名记录暂时缺失
+     */
+    void applyReloadedFakeBans(Collection<FakeBanEntry> changed, Collection<String> removedNames) {
+        for (FakeBanEntry entry : changed) {
+            if (entry.getState() && !entry.isExpired()) {
+                activateFakeBan(entry);
+                kickPlayer(entry.getName(), entry.getReason());
+                continue;
+            }
+            FakeBanEntry current = activeFakeBans.get(entry.getName());
+            if (current != null && deactivateFakeBan(current)) {
+                cancelExpiry(current.getName());
+            }
+        }
+        for (String name : removedNames) {
+            FakeBanEntry current = activeFakeBans.get(name);
+            if (current != null && deactivateFakeBan(current)) {
+                cancelExpiry(name);
+            }
+        }
+    }
+
     /**
      * 检查玩家是否被临时封禁
      */
     public boolean isFakeBanned(String uuid, String ip, String username) {
-        return activeFakeBans.values().stream()
-                .filter(entry -> !entry.isExpired())
-                .anyMatch(entry -> {
-                    // 优先检查玩家名
-                    if (entry.getName().equalsIgnoreCase(username)) {
-                        return true;
-                    }
-                    // 检查UUID和IP（如果不为空）
-                    return (!entry.getUuid().isEmpty() && entry.getUuid().equals(uuid)) ||
-                           (!entry.getIp().isEmpty() && entry.getIp().equals(ip));
-                });
+        return getFakeBanInfo(uuid, ip, username) != null;
     }
 
     /**
      * 获取临时封禁信息
      */
     public FakeBanEntry getFakeBanInfo(String uuid, String ip, String username) {
-        return activeFakeBans.values().stream()
-                .filter(entry -> !entry.isExpired())
-                .filter(entry -> {
-                    if (entry.getName().equalsIgnoreCase(username)) {
-                        return true;
-                    }
-                    return (!entry.getUuid().isEmpty() && entry.getUuid().equals(uuid)) ||
-                           (!entry.getIp().isEmpty() && entry.getIp().equals(ip));
-                })
-                .findFirst()
-                .orElse(null);
+        return getFakeBanInfo(uuid, ip, username, true);
+    }
+
+    /**
+     * @param recordMetrics 是否计入布隆过滤器的统计；登录预检查不计入，放行后的正式检查才计入
+     */
+    FakeBanEntry getFakeBanInfo(String uuid, String ip, String username, boolean recordMetrics) {
+        BanFilter filter = fakeBanFilter;
+        if (filter != null && !filter.mightContain(username) && !filter.mightContain(uuid) && !filter.mightContain(ip)) {
+            if (recordMetrics) {
+                configManager.getMetrics().getFakeBanFilter().recordNegative();
+            }
+            return null;
+        }
+        for (FakeBanEntry entry : activeFakeBans.values()) {
+            if (entry.isExpired()) {
+                continue;
+            }
+            // 优先检查玩家名
+            if (entry.getName().equalsIgnoreCase(username)) {
+                return entry;
+            }
+            // 检查UUID和IP（离线临时封禁时可能为空）
+            if ((entry.getUuid() != null && !entry.getUuid().isEmpty() && entry.getUuid().equals(uuid)) ||
+                (entry.getIp() != null && !entry.getIp().isEmpty() && entry.getIp().equals(ip))) {
+                return entry;
+            }
+        }
+        if (filter != null && recordMetrics) {
+            configManager.getMetrics().getFakeBanFilter().recordFalsePositive();
+        }
+        return null;
+    }
+
+    /**
+     * 当前的布隆过滤器，未启用时为null
+     */
+    BanFilter getFilter() {
+        return fakeBanFilter;
     }
 
     /**
@@ -257,53 +338,114 @@ public class FakeBanManager {
      * 加载活跃的临时封禁记录
      */
     private void loadActiveFakeBans() {
-        activeFakeBans.clear();
-        Map<String, FakeBanEntry> fakeBans = configManager.getFakeBans();
-        
-        for (FakeBanEntry entry : fakeBans.values()) {
-            if (entry.getState() && !entry.isExpired()) {
-                activeFakeBans.put(entry.getName(), entry);
-            }
+        synchronized (filterLock) {
+            activeFakeBans.keySet().forEach(fakeBannedNames::remove);
+            activeFakeBans.clear();
         }
+        fakeBanExpiries.values().forEach(ExpiryScheduler.Timeout::cancel);
+        fakeBanExpiries.clear();
+        List<FakeBanEntry> active = configManager.getFakeBans().values().stream()
+                .filter(entry -> entry.getState() && !entry.isExpired())
+                .collect(Collectors.toList());
+        // 与重建时相同，按活跃记录数确定容量
+        fakeBanFilter = BanFilter.create(configManager, active.size());
+        active.forEach(this::activateFakeBan);
         
         logger.info("加载了 " + activeFakeBans.size() + " 个活跃的临时封禁记录");
     }
 
     /**
-     * 启动清理任务
+     * 加入活跃列表并登记到期任务
      */
-    private void startCleanupTask() {
-        // 每分钟清理一次过期的临时封禁
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                // 清理过期的待确认操作
-                pendingFakeBans.entrySet().removeIf(entry -> entry.getValue().isExpired());
-                
-                // 清理过期的临时封禁
-                configManager.cleanupExpiredFakeBans();
-                loadActiveFakeBans();
-                
-            } catch (Exception e) {
-                logger.error("清理过期临时封禁时发生错误", e);
+    private void activateFakeBan(FakeBanEntry entry) {
+        synchronized (filterLock) {
+            // 先写入过滤器再加入活跃列表，登录检查不会出现列表中有而过滤器中没有的记录
+            BanFilter filter = fakeBanFilter;
+            if (filter != null) {
+                filter.add(entry.getName());
+                filter.add(entry.getUuid());
+                filter.add(entry.getIp());
+            }
+            if (activeFakeBans.put(entry.getName(), entry) != null) {
+                recordRemoval();
             }
-        }, 1, 1, TimeUnit.MINUTES);
+            fakeBannedNames.add(entry.getName());
+            if (filter != null && filter.needsRebuild()) {
+                rebuildFilter();
+            }
+        }
+        cancelExpiry(entry.getName());
+        ExpiryScheduler.Timeout timeout = expiryScheduler.schedule(entry.getEndTime(), () -> {
+            // 期间可能已被解除或被新的记录取代，只处理原记录
+            if (deactivateFakeBan(entry)) {
+                fakeBanExpiries.remove(entry.getName());
+                configManager.expireFakeBan(entry);
+                logger.info("临时封禁已到期: " + entry.getName());
+            }
+        });
+        fakeBanExpiries.put(entry.getName(), timeout);
     }
 
     /**
-     * 关闭管理器
+     * 将记录移出活跃列表（记录已被解除或取代时不做处理）
+     * @return 是否移除了该记录
      */
-    public void shutdown() {
-        scheduler.shutdown();
-        try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
+    private boolean deactivateFakeBan(FakeBanEntry entry) {
+        synchronized (filterLock) {
+            if (!activeFakeBans.remove(entry.getName(), entry)) {
+                return false;
             }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-            Thread.currentThread().interrupt();
+            fakeBannedNames.remove(entry.getName());
+            recordRemoval();
+            return true;
+        }
+    }
+
+    private void recordRemoval() {
+        BanFilter filter = fakeBanFilter;
+        if (filter != null) {
+            filter.recordRemoval();
         }
     }
 
+    /**
+     * 按当前活跃列表重建过滤器（调用方需持有filterLock）
+     */
+    private void rebuildFilter() {
+        BanFilter filter = BanFilter.create(configManager, activeFakeBans.size());
+        if (filter != null) {
+            for (FakeBanEntry entry : activeFakeBans.values()) {
+                filter.add(entry.getName());
+                filter.add(entry.getUuid());
+                filter.add(entry.getIp());
+            }
+        }
+        fakeBanFilter = filter;
+    }
+
+    private void cancelExpiry(String name) {
+        ExpiryScheduler.Timeout timeout = fakeBanExpiries.remove(name);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * 关闭管理器，取消尚未到期的任务（共用的调度器由插件主类关闭）
+     */
+    public void shutdown() {
+        fakeBanExpiries.values().forEach(ExpiryScheduler.Timeout::cancel);
+        fakeBanExpiries.clear();
+        pendingFakeBans.clear();
+    }
+
+    /**
+     * 活跃临时封禁玩家名的补全索引
+     */
+    NameCompletionIndex getFakeBannedNames() {
+        return fakeBannedNames;
+    }
+
     /**
      * 获取所有被临时封禁的玩家名列表
      */
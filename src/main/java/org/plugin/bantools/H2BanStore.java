@@ -0,0 +1,225 @@
+package org.plugin.bantools;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 嵌入式H2数据库后端（storage.type = "h2"），数据保存在插件目录下的bans.mv.db中
+ * 每条记录一行，记录名为主键，另按UUID、IP、开始时间建立索引；
+ * 修改只对变化的行执行预编译的MERGE语句并在一个事务中提交，单行更新为O(log n)，不需要重写整个文件；
+ * 写入全部记录时另外删除已不在表中的行
+ * 增量写入与完整写入分别计入与变更日志追加、快照写入相同的统计，加载计入ConfigManager的配置加载统计
+ */
+final class H2BanStore implements BanStore {
+    private static final String DRIVER = "org.h2.Driver";
+    private static final String COLUMNS = "name, uuid, ip, reason, start_time, end_time, state";
+
+    private final Connection connection;
+    private final BanToolsMetrics metrics;
+    private final PreparedStatement mergeBan;
+    private final PreparedStatement mergeFakeBan;
+
+    private H2BanStore(Connection connection, BanToolsMetrics metrics) throws SQLException {
+        this.connection = connection;
+        this.metrics = metrics;
+        mergeBan = connection.prepareStatement("MERGE INTO bans (" + COLUMNS + ") KEY (name) VALUES (?, ?, ?, ?, ?, ?, ?)");
+        mergeFakeBan = connection.prepareStatement("MERGE INTO fakebans (" + COLUMNS + ") KEY (name) VALUES (?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    /**
+     * 打开（不存在时创建）数据库
+     * @param file 数据库文件路径，不含.mv.db后缀
+     * @param metrics 写入耗时的统计
+     */
+    static H2BanStore open(Path file, BanToolsMetrics metrics) throws Exception {
+        // 驱动由插件的类加载器加载并注册，DriverManager据此允许插件使用它
+        Class.forName(DRIVER);
+        Connection connection = DriverManager.getConnection("jdbc:h2:file:" + file.toAbsolutePath());
+        try {
+            createSchema(connection);
+            connection.setAutoCommit(false);
+            return new H2BanStore(connection, metrics);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private static void createSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : new String[]{"bans", "fakebans"}) {
+                statement.execute("CREATE TABLE IF NOT EXISTS " + table + " (" +
+                        "name VARCHAR PRIMARY KEY, " +
+                        "uuid VARCHAR, " +
+                        "ip VARCHAR, " +
+                        "reason VARCHAR, " +
+                        "start_time BIGINT NOT NULL, " +
+                        "end_time BIGINT, " +
+                        "state BOOLEAN NOT NULL)");
+                statement.execute("CREATE INDEX IF NOT EXISTS " + table + "_uuid ON " + table + " (uuid)");
+                statement.execute("CREATE INDEX IF NOT EXISTS " + table + "_ip ON " + table + " (ip)");
+                statement.execute("CREATE INDEX IF NOT EXISTS " + table + "_start_time ON " + table + " (start_time)");
+            }
+        }
+    }
+
+    @Override
+    public synchronized void load(Map<String, BanEntry> bans, Map<String, FakeBanEntry> fakeBans) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rows = statement.executeQuery("SELECT " + COLUMNS + " FROM bans")) {
+                while (rows.next()) {
+                    BanEntry entry = new BanEntry();
+                    entry.setName(rows.getString(1));
+                    entry.setUuid(rows.getString(2));
+                    entry.setIp(rows.getString(3));
+                    entry.setReason(rows.getString(4));
+                    entry.setStartTime(rows.getLong(5));
+                    long endTime = rows.getLong(6);
+                    entry.setEndTime(rows.wasNull() ? null : endTime);
+                    entry.setState(rows.getBoolean(7));
+                    bans.put(entry.getName(), entry);
+                }
+            }
+            try (ResultSet rows = statement.executeQuery("SELECT " + COLUMNS + " FROM fakebans")) {
+                while (rows.next()) {
+                    FakeBanEntry entry = new FakeBanEntry();
+                    entry.setName(rows.getString(1));
+                    entry.setUuid(rows.getString(2));
+                    entry.setIp(rows.getString(3));
+                    entry.setReason(rows.getString(4));
+                    entry.setStartTime(rows.getLong(5));
+                    entry.setEndTime(rows.getLong(6));
+                    entry.setState(rows.getBoolean(7));
+                    fakeBans.put(entry.getName(), entry);
+                }
+            }
+            connection.commit();
+        }
+    }
+
+    @Override
+    public synchronized void write(List<BanEntry> bans, List<FakeBanEntry> fakeBans) throws SQLException {
+        if (bans.isEmpty() && fakeBans.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            merge(bans, fakeBans);
+            connection.commit();
+            metrics.getJournalAppend().recordSince(start);
+        } catch (SQLException e) {
+            mergeBan.clearBatch();
+            mergeFakeBan.clearBatch();
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * 覆盖全部记录，并在同一事务中删除不在给定记录中的行（记录在config.conf中被删除后由此同步到数据库）
+     */
+    @Override
+    public synchronized void writeAll(List<BanEntry> bans, List<FakeBanEntry> fakeBans) throws SQLException {
+        Set<String> banNames = new HashSet<>();
+        bans.forEach(entry -> banNames.add(entry.getName()));
+        Set<String> fakeBanNames = new HashSet<>();
+        fakeBans.forEach(entry -> fakeBanNames.add(entry.getName()));
+        long start = System.nanoTime();
+        try {
+            merge(bans, fakeBans);
+            deleteMissing("bans", banNames);
+            deleteMissing("fakebans", fakeBanNames);
+            connection.commit();
+            metrics.getSnapshotSave().recordSince(start);
+        } catch (SQLException e) {
+            mergeBan.clearBatch();
+            mergeFakeBan.clearBatch();
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * 执行MERGE，不提交
+     */
+    private void merge(List<BanEntry> bans, List<FakeBanEntry> fakeBans) throws SQLException {
+        for (BanEntry entry : bans) {
+            bind(mergeBan, entry.getName(), entry.getUuid(), entry.getIp(), entry.getReason(),
+                    entry.getStartTime(), entry.getEndTime(), entry.getState());
+        }
+        for (FakeBanEntry entry : fakeBans) {
+            bind(mergeFakeBan, entry.getName(), entry.getUuid(), entry.getIp(), entry.getReason(),
+                    entry.getStartTime(), entry.getEndTime(), entry.getState());
+        }
+        if (!bans.isEmpty()) {
+            mergeBan.executeBatch();
+        }
+        if (!fakeBans.isEmpty()) {
+            mergeFakeBan.executeBatch();
+        }
+    }
+
+    /**
+     * 删除表中记录名不在keep中的行，不提交
+     */
+    private void deleteMissing(String table, Set<String> keep) throws SQLException {
+        List<String> missing = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT name FROM " + table)) {
+            while (rows.next()) {
+                String name = rows.getString(1);
+                if (!keep.contains(name)) {
+                    missing.add(name);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + table + " WHERE name = ?")) {
+            for (String name : missing) {
+                delete.setString(1, name);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            mergeBan.close();
+            mergeFakeBan.close();
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("关闭H2数据库失败: " + e.getMessage());
+        }
+    }
+
+    private static void bind(PreparedStatement statement, String name, String uuid, String ip, String reason,
+                             long startTime, Long endTime, boolean state) throws SQLException {
+        statement.setString(1, name);
+        statement.setString(2, uuid);
+        statement.setString(3, ip);
+        statement.setString(4, reason);
+        statement.setLong(5, startTime);
+        if (endTime == null) {
+            statement.setNull(6, Types.BIGINT);
+        } else {
+            statement.setLong(6, endTime);
+        }
+        statement.setBoolean(7, state);
+        statement.addBatch();
+    }
+}
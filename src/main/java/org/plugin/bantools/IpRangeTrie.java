@@ -0,0 +1,322 @@
+package org.plugin.bantools;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * IP段封禁索引
+ * 按地址位建立的路径压缩二叉前缀树（IPv4、IPv6各一棵），登录时做一次最长前缀匹配，最多走32或128步；
+ * 整棵树不可变，修改时返回新树，只复制从根到目标节点的路径，已发布的树可以无锁并发读取
+ */
+final class IpRangeTrie {
+    static final IpRangeTrie EMPTY = new IpRangeTrie(Node.ROOT, Node.ROOT);
+
+    private final Node root4;
+    private final Node root6;
+
+    private IpRangeTrie(Node root4, Node root6) {
+        this.root4 = root4;
+        this.root6 = root6;
+    }
+
+    /**
+     * 返回加入一条IP段封禁后的新树
+     */
+    IpRangeTrie with(Prefix prefix, BanEntry entry) {
+        if (prefix.address.length == 4) {
+            return new IpRangeTrie(insert(root4, prefix, entry), root6);
+        }
+        return new IpRangeTrie(root4, insert(root6, prefix, entry));
+    }
+
+    /**
+     * 返回移除一条IP段封禁后的新树
+     */
+    IpRangeTrie without(Prefix prefix, BanEntry entry) {
+        if (prefix.address.length == 4) {
+            return new IpRangeTrie(delete(root4, prefix, entry), root6);
+        }
+        return new IpRangeTrie(root4, delete(root6, prefix, entry));
+    }
+
+    boolean isEmpty() {
+        return root4.isEmptyRoot() && root6.isEmptyRoot();
+    }
+
+    /**
+     * 查找覆盖该IP的最具体且生效中的IP段封禁
+     * @param ip 玩家IP（InetAddress.getHostAddress格式）
+     */
+    BanEntry match(String ip) {
+        if (ip == null || isEmpty()) {
+            return null;
+        }
+        byte[] address = parseAddress(ip);
+        if (address == null) {
+            return null;
+        }
+        Node node = address.length == 4 ? root4 : root6;
+        int totalBits = address.length * 8;
+        BanEntry best = null;
+        while (node != null && matches(node, address)) {
+            for (BanEntry entry : node.entries) {
+                if (entry.getState() && !entry.isExpired()) {
+                    best = entry;
+                    break;
+                }
+            }
+            if (node.length == totalBits) {
+                break;
+            }
+            node = node.child(bitAt(address, node.length));
+        }
+        return best;
+    }
+
+    private static Node insert(Node node, Prefix prefix, BanEntry entry) {
+        // 前提：node的前缀是目标前缀的前缀
+        if (node.length == prefix.length) {
+            return node.withEntries(append(node.entries, entry));
+        }
+        int bit = bitAt(prefix.address, node.length);
+        Node child = node.child(bit);
+        if (child == null) {
+            return node.withChild(bit, new Node(prefix.address, prefix.length, null, null, Collections.singletonList(entry)));
+        }
+        int common = commonPrefixLength(child.key, prefix.address, Math.min(child.length, prefix.length));
+        if (common == child.length) {
+            return node.withChild(bit, insert(child, prefix, entry));
+        }
+        // 分裂：在公共前缀处插入一个新的分支节点
+        Node split = new Node(mask(prefix.address, common), common, null, null, Collections.emptyList())
+                .withChild(bitAt(child.key, common), child);
+        if (common == prefix.length) {
+            split = split.withEntries(Collections.singletonList(entry));
+        } else {
+            split = split.withChild(bitAt(prefix.address, common),
+                    new Node(prefix.address, prefix.length, null, null, Collections.singletonList(entry)));
+        }
+        return node.withChild(bit, split);
+    }
+
+    private static Node delete(Node node, Prefix prefix, BanEntry entry) {
+        if (node.length == prefix.length) {
+            List<BanEntry> remaining = new ArrayList<>(node.entries);
+            remaining.remove(entry);
+            return compress(node.withEntries(Collections.unmodifiableList(remaining)));
+        }
+        int bit = bitAt(prefix.address, node.length);
+        Node child = node.child(bit);
+        if (child == null || child.length > prefix.length ||
+                commonPrefixLength(child.key, prefix.address, child.length) < child.length) {
+            return node;
+        }
+        return compress(node.withChild(bit, delete(child, prefix, entry)));
+    }
+
+    /**
+     * 删除后保持路径压缩：没有记录的节点若只剩一个子节点则由子节点取代，没有子节点则删除（根节点除外）
+     */
+    private static Node compress(Node node) {
+        if (node.length == 0 || !node.entries.isEmpty()) {
+            return node;
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        return node;
+    }
+
+    private static List<BanEntry> append(List<BanEntry> entries, BanEntry entry) {
+        List<BanEntry> result = new ArrayList<>(entries.size() + 1);
+        result.addAll(entries);
+        result.add(entry);
+        return Collections.unmodifiableList(result);
+    }
+
+    private static boolean matches(Node node, byte[] address) {
+        return commonPrefixLength(node.key, address, node.length) == node.length;
+    }
+
+    private static int bitAt(byte[] address, int index) {
+        return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    private static int commonPrefixLength(byte[] a, byte[] b, int limit) {
+        int length = 0;
+        for (int i = 0; length < limit; i++) {
+            int diff = (a[i] ^ b[i]) & 0xFF;
+            if (diff != 0) {
+                length += Integer.numberOfLeadingZeros(diff) - 24;
+                break;
+            }
+            length += 8;
+        }
+        return Math.min(length, limit);
+    }
+
+    private static byte[] mask(byte[] address, int length) {
+        byte[] result = new byte[address.length];
+        for (int i = 0; i < address.length; i++) {
+            int bits = Math.max(0, Math.min(8, length - i * 8));
+            result[i] = (byte) (address[i] & (0xFF << (8 - bits)));
+        }
+        return result;
+    }
+
+    /**
+     * 解析IP字面量，不会触发DNS查询；无法解析时返回null
+     */
+    static byte[] parseAddress(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        if (text.indexOf(':') < 0) {
+            return parseIpv4(text);
+        }
+        int scope = text.indexOf('%');
+        String literal = scope >= 0 ? text.substring(0, scope) : text;
+        try {
+            // 含有冒号的字符串只会被当作IPv6字面量解析
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static byte[] parseIpv4(String text) {
+        byte[] result = new byte[4];
+        int part = 0;
+        int value = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '.';
+            if (c == '.') {
+                if (value < 0 || part >= 4) {
+                    return null;
+                }
+                result[part++] = (byte) value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        return part == 4 ? result : null;
+    }
+
+    /**
+     * IP段（CIDR），单个IP视为/32或/128
+     */
+    static final class Prefix {
+        final byte[] address;
+        final int length;
+
+        private Prefix(byte[] address, int length) {
+            this.address = mask(address, length);
+            this.length = length;
+        }
+
+        /**
+         * 解析 "203.0.113.0/24"、"2001:db8::/64" 或单个IP，不是IP格式时返回null
+         */
+        static Prefix parse(String text) {
+            if (text == null) {
+                return null;
+            }
+            String trimmed = text.trim();
+            int slash = trimmed.indexOf('/');
+            byte[] address = parseAddress(slash >= 0 ? trimmed.substring(0, slash) : trimmed);
+            if (address == null) {
+                return null;
+            }
+            int maxLength = address.length * 8;
+            int length = maxLength;
+            if (slash >= 0) {
+                try {
+                    length = Integer.parseInt(trimmed.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (length < 0 || length > maxLength) {
+                    return null;
+                }
+            }
+            return new Prefix(address, length);
+        }
+
+        boolean isSingleAddress() {
+            return length == address.length * 8;
+        }
+
+        /**
+         * 该IP段是否包含指定地址
+         */
+        boolean contains(InetAddress target) {
+            byte[] bytes = target.getAddress();
+            return bytes.length == address.length && commonPrefixLength(address, bytes, length) == length;
+        }
+
+        /**
+         * 规范化的文本形式：单个IP与InetAddress.getHostAddress一致，IP段为"网络地址/前缀长度"
+         */
+        @Override
+        public String toString() {
+            String host;
+            try {
+                host = address.length == 16 ?
+                        Inet6Address.getByAddress(null, address, null).getHostAddress() :
+                        InetAddress.getByAddress(address).getHostAddress();
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException(e);
+            }
+            return isSingleAddress() ? host : host + "/" + length;
+        }
+    }
+
+    private static final class Node {
+        static final Node ROOT = new Node(new byte[16], 0, null, null, Collections.emptyList());
+
+        final byte[] key;
+        final int length;
+        final Node left;
+        final Node right;
+        final List<BanEntry> entries;
+
+        Node(byte[] key, int length, Node left, Node right, List<BanEntry> entries) {
+            this.key = key;
+            this.length = length;
+            this.left = left;
+            this.right = right;
+            this.entries = entries;
+        }
+
+        Node child(int bit) {
+            return bit == 0 ? left : right;
+        }
+
+        Node withChild(int bit, Node child) {
+            return bit == 0 ?
+                    new Node(key, length, child, right, entries) :
+                    new Node(key, length, left, child, entries);
+        }
+
+        Node withEntries(List<BanEntry> newEntries) {
+            return new Node(key, length, left, right, newEntries);
+        }
+
+        boolean isEmptyRoot() {
+            return left == null && right == null && entries.isEmpty();
+        }
+    }
+}
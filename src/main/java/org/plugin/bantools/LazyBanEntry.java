@@ -0,0 +1,100 @@
+package org.plugin.bantools;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 从二进制快照加载的封禁记录
+ * 玩家名、状态和时间在加载时解码；UUID、IP和原因在首次访问时才从映射的快照中解码，
+ * 大量从未被访问的历史记录因此不会占用解码开销
+ */
+class LazyBanEntry extends BanEntry {
+    // 尚未解码时指向快照中uuid/ip/reason所在的位置，解码后置为null
+    private volatile ByteBuffer source;
+    private final int offset;
+
+    LazyBanEntry(ByteBuffer source, int offset) {
+        this.source = source;
+        this.offset = offset;
+    }
+
+    @Override
+    public String getUuid() {
+        materialize();
+        return super.getUuid();
+    }
+
+    @Override
+    public void setUuid(String uuid) {
+        materialize();
+        super.setUuid(uuid);
+    }
+
+    @Override
+    public String getIp() {
+        materialize();
+        return super.getIp();
+    }
+
+    @Override
+    public void setIp(String ip) {
+        materialize();
+        super.setIp(ip);
+    }
+
+    @Override
+    public String getReason() {
+        materialize();
+        return super.getReason();
+    }
+
+    @Override
+    public void setReason(String reason) {
+        materialize();
+        super.setReason(reason);
+    }
+
+    boolean isMaterialized() {
+        return source == null;
+    }
+
+    private void materialize() {
+        if (source == null) {
+            return;
+        }
+        synchronized (this) {
+            ByteBuffer buffer = source;
+            if (buffer == null) {
+                return;
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            super.setUuid(BanSnapshotFile.readString(view));
+            super.setIp(BanSnapshotFile.readString(view));
+            super.setReason(BanSnapshotFile.readString(view));
+            source = null;
+        }
+    }
+
+    /**
+     * 尚未解码时把原始编码直接写入新快照，避免为写快照而解码整张表
+     * @return 已解码时返回false，由调用方按字段写入
+     */
+    synchronized boolean copyEncodedTo(DataOutputStream out) throws IOException {
+        ByteBuffer buffer = source;
+        if (buffer == null) {
+            return false;
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        BanSnapshotFile.skipString(view);
+        BanSnapshotFile.skipString(view);
+        BanSnapshotFile.skipString(view);
+        byte[] encoded = new byte[view.position() - offset];
+        view.position(offset);
+        view.get(encoded);
+        out.write(encoded);
+        return true;
+    }
+}
@@ -1,34 +1,97 @@
 package org.plugin.bantools;
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.ResultedEvent;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.proxy.Player;
-import net.kyori.adventure.text.Component;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 登录检查
+ * PreLoginEvent阶段（正版验证和加密之前）只按IP和玩家名检查，已知被封禁的连接直接拒绝，不再消耗一次验证往返；
+ * LoginEvent阶段拿到验证后的UUID再做完整检查，仍是最终的判定
+ */
 public class LoginListener {
     private final BanManager banManager;
+    private final ConfigManager configManager;
+    private final BanToolsMetrics metrics;
+    // 封禁检查在独立线程池中执行，不占用Netty事件线程
+    private final ExecutorService executor;
 
-    public LoginListener(BanManager banManager) {
+    public LoginListener(BanManager banManager, ConfigManager configManager) {
         this.banManager = banManager;
+        this.configManager = configManager;
+        this.metrics = configManager.getMetrics();
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 2), r -> {
+                    Thread thread = new Thread(r, "BanTools-Login-" + threadId.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
     }
 
     @Subscribe(order = PostOrder.FIRST)
-    public void onPlayerLogin(LoginEvent event) {
+    public EventTask onPreLogin(PreLoginEvent event) {
+        if (!configManager.isPreLoginCheckEnabled() || !event.getResult().isAllowed()) {
+            return null;
+        }
+        return EventTask.resumeWhenComplete(CompletableFuture.runAsync(() -> checkPreLogin(event), executor));
+    }
+
+    @Subscribe(order = PostOrder.FIRST)
+    public EventTask onPlayerLogin(LoginEvent event) {
+        return EventTask.resumeWhenComplete(CompletableFuture.runAsync(() -> checkLogin(event), executor));
+    }
+
+    private void checkLogin(LoginEvent event) {
+        long start = System.nanoTime();
         Player player = event.getPlayer();
-        if (banManager.isBanned(
+        LoginVerdict verdict = banManager.evaluateLogin(
                 player.getUniqueId().toString(),
                 player.getRemoteAddress().getAddress().getHostAddress(),
                 player.getUsername()
-        )) {
-            event.setResult(ResultedEvent.ComponentResult.denied(
-                    Component.text(banManager.getBanMessage(
-                            player.getUniqueId().toString(),
-                            player.getRemoteAddress().getAddress().getHostAddress(),
-                            player.getUsername()
-                    ))
-            ));
+        );
+        metrics.recordLoginCheck(System.nanoTime() - start, verdict.getRejectType());
+        if (!verdict.isAllowed()) {
+            event.setResult(ResultedEvent.ComponentResult.denied(verdict.getDenyMessage()));
+        }
+    }
+
+    private void checkPreLogin(PreLoginEvent event) {
+        long start = System.nanoTime();
+        LoginVerdict verdict = banManager.evaluatePreLogin(
+                event.getConnection().getRemoteAddress().getAddress().getHostAddress(),
+                event.getUsername()
+        );
+        // 放行的连接之后还会在LoginEvent中检查，只有在这里被拒绝的才计入登录检查
+        if (!verdict.isAllowed()) {
+            metrics.recordLoginCheck(System.nanoTime() - start, verdict.getRejectType());
+            metrics.recordPreLoginReject();
+            event.setResult(PreLoginEvent.PreLoginComponentResult.denied(verdict.getDenyMessage()));
+        }
+    }
+
+    /**
+     * 关闭登录检查线程池
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
         }
     }
 }
\ No newline at end of file
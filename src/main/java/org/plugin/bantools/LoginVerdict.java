@@ -0,0 +1,55 @@
+package org.plugin.bantools;
+
+import net.kyori.adventure.text.Component;
+
+/**
+ * 登录检查结果
+ * 一次查找即可得出是否放行，被拒绝时附带命中的封禁记录和现成的拒绝消息
+ */
+public final class LoginVerdict {
+    private static final LoginVerdict ALLOWED = new LoginVerdict(null, null, null, null);
+
+    private final BanEntry banEntry;
+    private final FakeBanEntry fakeBanEntry;
+    private final BanToolsMetrics.RejectType rejectType;
+    private final Component denyMessage;
+
+    private LoginVerdict(BanEntry banEntry, FakeBanEntry fakeBanEntry,
+                         BanToolsMetrics.RejectType rejectType, Component denyMessage) {
+        this.banEntry = banEntry;
+        this.fakeBanEntry = fakeBanEntry;
+        this.rejectType = rejectType;
+        this.denyMessage = denyMessage;
+    }
+
+    public static LoginVerdict allowed() {
+        return ALLOWED;
+    }
+
+    public static LoginVerdict banned(BanEntry entry, BanToolsMetrics.RejectType rejectType, Component denyMessage) {
+        return new LoginVerdict(entry, null, rejectType, denyMessage);
+    }
+
+    public static LoginVerdict fakeBanned(FakeBanEntry entry, Component denyMessage) {
+        return new LoginVerdict(null, entry, BanToolsMetrics.RejectType.FAKEBAN, denyMessage);
+    }
+
+    public boolean isAllowed() { return denyMessage == null; }
+
+    /**
+     * 命中的普通封禁记录，未命中时为null
+     */
+    public BanEntry getBanEntry() { return banEntry; }
+
+    /**
+     * 命中的临时封禁记录，未命中时为null
+     */
+    public FakeBanEntry getFakeBanEntry() { return fakeBanEntry; }
+
+    /**
+     * 被拒绝的原因（命中的是哪种封禁），放行时为null
+     */
+    public BanToolsMetrics.RejectType getRejectType() { return rejectType; }
+
+    public Component getDenyMessage() { return denyMessage; }
+}
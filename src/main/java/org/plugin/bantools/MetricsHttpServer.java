@@ -0,0 +1,165 @@
+package org.plugin.bantools;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prometheus格式的统计接口（默认关闭）
+ * 基于JDK自带的HttpServer，在单独的线程上处理抓取请求；
+ * 输出时只读取BanToolsMetrics中的LongAdder和并发容器的大小，不会获取登录检查路径上的任何锁
+ */
+public class MetricsHttpServer {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    // 直方图输出的桶：2^10ns（约1µs）到2^36ns（约69s），桶集合固定不变
+    private static final int FIRST_BUCKET = 10;
+    private static final int LAST_BUCKET = 36;
+
+    private final BanToolsMetrics metrics;
+    private final Logger logger;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetricsHttpServer(BanToolsMetrics metrics, Logger logger) {
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    /**
+     * 在指定地址启动，失败时只记录日志，不影响插件其他功能
+     */
+    public void start(String host, int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "BanTools-Metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server.setExecutor(executor);
+            server.createContext("/metrics", this::handle);
+            server.start();
+            logger.info("统计接口已启动: http://" + host + ":" + port + "/metrics");
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("启动统计接口失败: " + host + ":" + port, e);
+            stop();
+        }
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 生成Prometheus文本格式
+     */
+    String render() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "bantools_login_checks_total", "counter", "Login checks performed");
+        sample(out, "bantools_login_checks_total", null, metrics.getLoginChecks());
+
+        header(out, "bantools_login_rejects_total", "counter", "Logins rejected, by matched ban type");
+        for (BanToolsMetrics.RejectType type : BanToolsMetrics.RejectType.values()) {
+            sample(out, "bantools_login_rejects_total", "type=\"" + type.name().toLowerCase(Locale.ROOT) + "\"",
+                    metrics.getRejects(type));
+        }
+        header(out, "bantools_prelogin_rejects_total", "counter", "Logins rejected before authentication (included in bantools_login_rejects_total)");
+        sample(out, "bantools_prelogin_rejects_total", null, metrics.getPreLoginRejects());
+
+        header(out, "bantools_filter_negatives_total", "counter", "Lookups answered by the bloom filter without touching the ban tables");
+        sample(out, "bantools_filter_negatives_total", "filter=\"ban\"", metrics.getBanFilter().getNegatives());
+        sample(out, "bantools_filter_negatives_total", "filter=\"fakeban\"", metrics.getFakeBanFilter().getNegatives());
+        header(out, "bantools_filter_false_positives_total", "counter", "Bloom filter matches that found no ban in the tables");
+        sample(out, "bantools_filter_false_positives_total", "filter=\"ban\"", metrics.getBanFilter().getFalsePositives());
+        sample(out, "bantools_filter_false_positives_total", "filter=\"fakeban\"", metrics.getFakeBanFilter().getFalsePositives());
+
+        histogram(out, "bantools_login_check_seconds", "Login check latency", metrics.getLoginLatency());
+        histogram(out, "bantools_journal_append_seconds", "Journal append latency", metrics.getJournalAppend());
+        histogram(out, "bantools_snapshot_save_seconds", "Full snapshot save latency", metrics.getSnapshotSave());
+        histogram(out, "bantools_config_load_seconds", "Config load latency", metrics.getConfigLoad());
+        histogram(out, "bantools_reload_seconds", "In-memory ban table rebuild latency", metrics.getBanReload());
+
+        for (Map.Entry<String, Long> gauge : metrics.getGauges().entrySet()) {
+            String name = "bantools_" + gauge.getKey();
+            header(out, name, "gauge", gauge.getKey().replace('_', ' '));
+            sample(out, name, null, gauge.getValue());
+        }
+        return out.toString();
+    }
+
+    private static void histogram(StringBuilder out, String name, String help, BanToolsMetrics.Histogram histogram) {
+        header(out, name, "histogram", help);
+        long[] buckets = histogram.getBuckets();
+        long cumulative = 0;
+        for (int i = 0; i <= LAST_BUCKET; i++) {
+            cumulative += buckets[i];
+            if (i >= FIRST_BUCKET) {
+                sample(out, name + "_bucket", "le=\"" + seconds(BanToolsMetrics.Histogram.upperBound(i)) + "\"", cumulative);
+            }
+        }
+        long count = 0;
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+        sample(out, name + "_bucket", "le=\"+Inf\"", count);
+        out.append(name).append("_sum ").append(seconds(histogram.getSum())).append('\n');
+        sample(out, name + "_count", null, count);
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
@@ -0,0 +1,54 @@
+package org.plugin.bantools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * 玩家名补全索引（忽略大小写）
+ * 按小写名排序的跳表，前缀查询直接定位到对应的子映射，取满N个结果即停止，不遍历也不复制全部名称；
+ * 增删为O(log n)，可以与查询并发进行
+ */
+final class NameCompletionIndex {
+    // 小写名 + '\0' + 原名 -> 原名（仅大小写不同的名称各占一项）
+    private final ConcurrentSkipListMap<String, String> names = new ConcurrentSkipListMap<>();
+
+    void add(String name) {
+        if (name != null && !name.isEmpty()) {
+            names.put(key(name), name);
+        }
+    }
+
+    void remove(String name) {
+        if (name != null && !name.isEmpty()) {
+            names.remove(key(name));
+        }
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    /**
+     * 按字母顺序返回以prefix开头（忽略大小写）且满足filter的前limit个名称
+     */
+    List<String> complete(String prefix, int limit, Predicate<String> filter) {
+        String lower = prefix.toLowerCase(Locale.ROOT);
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        for (String name : names.subMap(lower, lower + Character.MAX_VALUE).values()) {
+            if (filter.test(name)) {
+                result.add(name);
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT) + '\0' + name;
+    }
+}
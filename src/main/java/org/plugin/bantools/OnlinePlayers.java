@@ -0,0 +1,39 @@
+package org.plugin.bantools;
+
+import com.velocitypowered.api.event.PostOrder;
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.PostLoginEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+
+/**
+ * 在线玩家名的补全索引，随登录和断开连接增量更新，补全时不必遍历 server.getAllPlayers()
+ */
+public class OnlinePlayers {
+    private final NameCompletionIndex names = new NameCompletionIndex();
+
+    public OnlinePlayers(ProxyServer server) {
+        // 插件加载前已在线的玩家
+        for (Player player : server.getAllPlayers()) {
+            names.add(player.getUsername());
+        }
+    }
+
+    @Subscribe(order = PostOrder.LAST)
+    public void onPostLogin(PostLoginEvent event) {
+        names.add(event.getPlayer().getUsername());
+    }
+
+    @Subscribe(order = PostOrder.LAST)
+    public void onDisconnect(DisconnectEvent event) {
+        // 同名玩家已在线而被拒绝的连接不能移除在线玩家的名字
+        if (event.getLoginStatus() != DisconnectEvent.LoginStatus.CONFLICTING_LOGIN) {
+            names.remove(event.getPlayer().getUsername());
+        }
+    }
+
+    NameCompletionIndex getNames() {
+        return names;
+    }
+}
@@ -0,0 +1,108 @@
+package org.plugin.bantools;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 不可变映射：一个大的基础表加一个小的增量表
+ * 每次修改只复制增量表，增量表超过约√n条时再合并成新的基础表，
+ * 因此单次修改的均摊代价约为O(√n)，而不是复制整张表的O(n)；
+ * 已发布的实例永远不会被修改，读取方无需加锁
+ */
+final class OverlayMap<V> {
+    private static final Object TOMBSTONE = new Object();
+    private static final int MIN_DELTA = 64;
+    private static final OverlayMap<?> EMPTY = new OverlayMap<>(Collections.emptyMap(), Collections.emptyMap(), 0);
+
+    private final Map<String, V> base;
+    // 值为V或TOMBSTONE（表示该键已删除）
+    private final Map<String, Object> delta;
+    private final int size;
+
+    private OverlayMap(Map<String, V> base, Map<String, Object> delta, int size) {
+        this.base = base;
+        this.delta = delta;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> OverlayMap<V> empty() {
+        return (OverlayMap<V>) EMPTY;
+    }
+
+    /**
+     * 以现有的映射作为基础表（调用方之后不得再修改该映射）
+     */
+    static <V> OverlayMap<V> of(Map<String, V> map) {
+        return new OverlayMap<>(map, Collections.emptyMap(), map.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        Object value = delta.get(key);
+        if (value != null) {
+            return value == TOMBSTONE ? null : (V) value;
+        }
+        return base.get(key);
+    }
+
+    int size() {
+        return size;
+    }
+
+    OverlayMap<V> with(String key, V value) {
+        if (value == null) {
+            return without(key);
+        }
+        return withDelta(key, value, get(key) == null ? size + 1 : size);
+    }
+
+    OverlayMap<V> without(String key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return withDelta(key, base.containsKey(key) ? TOMBSTONE : null, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<String, V> action) {
+        base.forEach((key, value) -> {
+            if (!delta.containsKey(key)) {
+                action.accept(key, value);
+            }
+        });
+        delta.forEach((key, value) -> {
+            if (value != TOMBSTONE) {
+                action.accept(key, (V) value);
+            }
+        });
+    }
+
+    /**
+     * @param value 新值；TOMBSTONE表示删除基础表中的键；null表示删除只存在于增量表中的键
+     */
+    @SuppressWarnings("unchecked")
+    private OverlayMap<V> withDelta(String key, Object value, int newSize) {
+        Map<String, Object> nextDelta = new HashMap<>(delta);
+        if (value == null) {
+            nextDelta.remove(key);
+        } else {
+            nextDelta.put(key, value);
+        }
+        if (nextDelta.size() <= Math.max(MIN_DELTA, (int) Math.sqrt(base.size()))) {
+            return new OverlayMap<>(base, nextDelta, newSize);
+        }
+        // 增量表过大，合并为新的基础表
+        Map<String, V> merged = new HashMap<>(base);
+        nextDelta.forEach((k, v) -> {
+            if (v == TOMBSTONE) {
+                merged.remove(k);
+            } else {
+                merged.put(k, (V) v);
+            }
+        });
+        return new OverlayMap<>(merged, Collections.emptyMap(), newSize);
+    }
+}
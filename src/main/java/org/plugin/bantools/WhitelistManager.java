@@ -3,6 +3,7 @@ package org.plugin.bantools;
 import org.slf4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 白名单管理器
@@ -12,14 +13,15 @@ public class WhitelistManager {
     private final ConfigManager configManager;
     private final Logger logger;
 
-    private boolean enabled;
-    private Set<String> whitelist;
-    private String protectionMessage;
+    // 重新加载时整体替换为新的集合，读取方不会看到加载到一半的白名单
+    private volatile boolean enabled;
+    private volatile Set<String> whitelist;
+    private volatile String protectionMessage;
 
     public WhitelistManager(ConfigManager configManager, Logger logger) {
         this.configManager = configManager;
         this.logger = logger;
-        this.whitelist = new HashSet<>();
+        this.whitelist = ConcurrentHashMap.newKeySet();
         this.protectionMessage = "该玩家受到白名单保护，无法执行此操作！";
 
         loadWhitelist();
@@ -30,14 +32,14 @@ public class WhitelistManager {
      */
     public void loadWhitelist() {
         try {
-            enabled = configManager.isWhitelistEnabled();
-            protectionMessage = configManager.getWhitelistProtectionMessage();
-
             List<String> whitelistPlayers = configManager.getWhitelistPlayers();
-            whitelist.clear();
+            Set<String> loaded = ConcurrentHashMap.newKeySet();
             if (whitelistPlayers != null) {
-                whitelist.addAll(whitelistPlayers);
+                loaded.addAll(whitelistPlayers);
             }
+            protectionMessage = configManager.getWhitelistProtectionMessage();
+            whitelist = loaded;
+            enabled = configManager.isWhitelistEnabled();
 
             logger.info("白名单配置已加载，状态: " + (enabled ? "启用" : "禁用") +
                        "，保护玩家数量: " + whitelist.size());
@@ -47,8 +49,9 @@ public class WhitelistManager {
             // 使用默认配置
             enabled = true;
             protectionMessage = "该玩家受到白名单保护，无法执行此操作！";
-            whitelist.clear();
-            whitelist.addAll(Arrays.asList("Admin", "Owner"));
+            Set<String> defaults = ConcurrentHashMap.newKeySet();
+            defaults.addAll(Arrays.asList("Admin", "Owner"));
+            whitelist = defaults;
         }
     }
 